@@ -0,0 +1,76 @@
+package study.querydsl.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.QuerydslApplication;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 벤치마크용 스프링 컨텍스트 (in-memory H2, 웹서버/SQL 로그/검색 캐시 없음)
+ */
+public final class BenchmarkContext {
+
+    public static final int TEAM_COUNT = 10;
+
+    private BenchmarkContext() {
+    }
+
+    public static ConfigurableApplicationContext start(String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.profiles.active=bench",
+                "--spring.datasource.url=jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1",
+                "--spring.jpa.properties.hibernate.format_sql=false",
+                "--spring.jpa.properties.hibernate.use_sql_comments=false",
+                "--logging.level.org.hibernate.SQL=warn",
+                "--logging.level.org.hibernate.type=warn",
+                "--decorator.datasource.p6spy.enable-logging=false",
+                "--member.search-cache.enabled=false"));
+        args.addAll(List.of(extraArgs));
+        return new SpringApplicationBuilder(QuerydslApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * JDBC batch 로 team TEAM_COUNT 개, member memberCount 개를 넣는다.
+     * member i 는 team (i % TEAM_COUNT), 나이는 i % 100
+     */
+    public static void seed(ConfigurableApplicationContext context, int memberCount) {
+        DataSource dataSource = context.getBean(DataSource.class);
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement ps = con.prepareStatement("insert into team (team_id, name) values (?, ?)")) {
+                for (int i = 0; i < TEAM_COUNT; i++) {
+                    ps.setLong(1, i + 1);
+                    ps.setString(2, "team" + i);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = con.prepareStatement(
+                    "insert into member (member_id, username, age, team_id) values (?, ?, ?, ?)")) {
+                for (int i = 0; i < memberCount; i++) {
+                    ps.setLong(1, i + 1);
+                    ps.setString(2, "member" + i);
+                    ps.setInt(3, i % 100);
+                    ps.setLong(4, i % TEAM_COUNT + 1);
+                    ps.addBatch();
+                    if (i % 1000 == 999) {
+                        ps.executeBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+            con.commit();
+        } catch (SQLException e) {
+            throw new IllegalStateException("벤치마크 데이터 생성 실패", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.repository.PageStrategy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 페이지 깊이별 offset vs deferred join (page size 20, 나이 10 이상 = 전체의 90%)
+ * count 는 approximate-threshold 이상이라 첫 호출 이후에는 재사용되므로 content 조회 비용 차이만 드러난다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeferredJoinBenchmark {
+
+    @Param({"1000000"})
+    int members;
+
+    @Param({"0", "100", "1000", "10000"})
+    int page;
+
+    @Param({"OFFSET", "DEFERRED_JOIN"})
+    PageStrategy strategy;
+
+    ConfigurableApplicationContext context;
+    MemberRepository memberRepository;
+    MemberSearchCondition condition;
+    Pageable pageable;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seed(context, members);
+        memberRepository = context.getBean(MemberRepository.class);
+
+        condition = new MemberSearchCondition();
+        condition.setAgeGoe(10);
+        pageable = PageRequest.of(page, 20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> searchPageComplex() {
+        return memberRepository.searchPageComplex(condition, pageable, strategy).getContent();
+    }
+}
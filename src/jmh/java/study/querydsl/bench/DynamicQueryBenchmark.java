@@ -0,0 +1,54 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 동적 쿼리 작성 방식 비교 : BooleanBuilder(searchByBuilder) vs where 다중 파라미터(searchByWhereParam)
+ * 둘 다 검색 캐시를 거치지 않고, 조건과 조인(teamName 조건이 있으면 inner join)이 같아서 같은 SQL 이 나간다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DynamicQueryBenchmark {
+
+    @Param({"10000", "1000000"})
+    int members;
+
+    ConfigurableApplicationContext context;
+    MemberJpaRepository memberJpaRepository;
+    MemberSearchCondition condition;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seed(context, members);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+
+        condition = new MemberSearchCondition();
+        condition.setTeamName("team1");
+        condition.setAgeGoe(20);
+        condition.setAgeLoe(29);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> booleanBuilder() {
+        return memberJpaRepository.searchByBuilder(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> whereParam() {
+        return memberJpaRepository.searchByWhereParam(condition);
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+
+import javax.persistence.EntityManager;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * allocation size 별 insert/sec
+ * 한번 호출에 INSERTS 건을 persist 하므로 결과 ops/s 가 곧 inserts/sec 이다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(IdAllocationBenchmark.INSERTS)
+public class IdAllocationBenchmark {
+
+    static final int INSERTS = 1000;
+
+    @Param({"1", "10", "50", "500"})
+    int allocationSize;
+
+    ConfigurableApplicationContext context;
+    EntityManager em;
+    TransactionTemplate transactionTemplate;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start("--spring.jpa.properties.study.id.allocation_size=" + allocationSize);
+        em = context.getBean(EntityManager.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void persist() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < INSERTS; i++) {
+                em.persist(new Member("member" + i, i % 100));
+            }
+            em.flush();
+            em.clear();
+        });
+    }
+}
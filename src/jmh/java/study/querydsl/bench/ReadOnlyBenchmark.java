@@ -0,0 +1,66 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 엔티티 조회(findAll_Querydsl)를 read-write 트랜잭션 vs read-only 트랜잭션에서 실행
+ * read-write 는 엔티티마다 스냅샷을 만들고 커밋 시 전체를 dirty checking(flush) 한다.
+ * 할당량은 gc profiler 결과(gc.alloc.rate.norm)로 본다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadOnlyBenchmark {
+
+    @Param({"10000", "100000"})
+    int members;
+
+    ConfigurableApplicationContext context;
+    MemberJpaRepository memberJpaRepository;
+    TransactionTemplate readWrite;
+    TransactionTemplate readOnly;
+
+    @Setup
+    public void setup() {
+        //2차 캐시에 엔티티를 넣는 비용은 빼고 본다.
+        context = BenchmarkContext.start("--member.entity-cache.enabled=false");
+        BenchmarkContext.seed(context, members);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+
+        PlatformTransactionManager transactionManager = context.getBean(PlatformTransactionManager.class);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int readWrite() {
+        return readWrite.execute(status -> sum(memberJpaRepository.findAll_Querydsl()));
+    }
+
+    @Benchmark
+    public int readOnly() {
+        return readOnly.execute(status -> sum(memberJpaRepository.findAll_Querydsl()));
+    }
+
+    private static int sum(List<Member> members) {
+        int sum = 0;
+        for (Member member : members) {
+            sum += member.getAge();
+        }
+        return sum;
+    }
+}
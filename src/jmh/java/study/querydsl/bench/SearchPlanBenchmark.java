@@ -0,0 +1,66 @@
+package study.querydsl.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberCompiledSearch;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Querydsl 동적 쿼리(searchByWhereParam) vs shape 별로 컴파일해둔 JPQL(MemberCompiledSearch)
+ * 둘 다 검색 캐시를 거치지 않고 같은 SQL 을 실행한다. 결과가 1건인 조건을 써서 쿼리 생성 비용 차이가 드러나게 한다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SearchPlanBenchmark {
+
+    @Param({"10000"})
+    int members;
+
+    ConfigurableApplicationContext context;
+    MemberJpaRepository memberJpaRepository;
+    MemberCompiledSearch memberCompiledSearch;
+    EntityManager em;
+    TransactionTemplate readOnly;
+    MemberSearchCondition condition;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seed(context, members);
+        memberJpaRepository = context.getBean(MemberJpaRepository.class);
+        memberCompiledSearch = context.getBean(MemberCompiledSearch.class);
+        em = context.getBean(EntityManager.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+
+        condition = new MemberSearchCondition();
+        condition.setUsername("member15");
+        condition.setTeamName("team5");
+        condition.setAgeGoe(10);
+        condition.setAgeLoe(20);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> querydsl() {
+        return memberJpaRepository.searchByWhereParam(condition);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> compiled() {
+        return readOnly.execute(status -> memberCompiledSearch.search(em, condition));
+    }
+}
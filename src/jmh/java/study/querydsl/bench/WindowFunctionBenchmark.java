@@ -0,0 +1,97 @@
+package study.querydsl.bench;
+
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.QMember;
+import study.querydsl.repository.MemberRankingRepository;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 팀별 top-N, 팀 평균 이상 회원을 윈도우 함수(MemberRankingRepository) vs JPAExpressions 상관 서브쿼리로 조회
+ * 서브쿼리는 회원 행마다 같은 팀을 다시 읽으므로 팀 크기(members / TEAM_COUNT)에 비례해서 느려진다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WindowFunctionBenchmark {
+
+    private static final int LIMIT = 3;
+
+    @Param({"1000", "10000"})
+    int members;
+
+    ConfigurableApplicationContext context;
+    MemberRankingRepository memberRankingRepository;
+    JPAQueryFactory queryFactory;
+    TransactionTemplate readOnly;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start();
+        BenchmarkContext.seed(context, members);
+        memberRankingRepository = context.getBean(MemberRankingRepository.class);
+        queryFactory = context.getBean(JPAQueryFactory.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> topByTeamWindow() {
+        return memberRankingRepository.findTopByTeam(LIMIT);
+    }
+
+    //자기보다 앞 순위(나이가 많거나, 같으면 id 가 작은) 팀원이 LIMIT 명 미만인 회원
+    @Benchmark
+    public List<MemberTeamDto> topByTeamSubQuery() {
+        QMember memberSub = new QMember("memberSub");
+        return readOnly.execute(status -> queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .join(member.team, team)
+                .where(Expressions.asNumber((long) LIMIT).gt(JPAExpressions
+                        .select(memberSub.count())
+                        .from(memberSub)
+                        .where(memberSub.team.eq(member.team),
+                                memberSub.age.gt(member.age)
+                                        .or(memberSub.age.eq(member.age).and(memberSub.id.lt(member.id))))))
+                .orderBy(team.id.asc(), member.age.desc(), member.id.asc())
+                .fetch());
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> aboveTeamAverageWindow() {
+        return memberRankingRepository.findAboveTeamAverage(MemberRankingRepository.MAX_ROWS);
+    }
+
+    @Benchmark
+    public List<MemberTeamDto> aboveTeamAverageSubQuery() {
+        QMember memberSub = new QMember("memberSub");
+        return readOnly.execute(status -> queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .join(member.team, team)
+                .where(member.age.gt(JPAExpressions
+                        .select(memberSub.age.avg())
+                        .from(memberSub)
+                        .where(memberSub.team.eq(member.team))))
+                .orderBy(team.id.asc(), member.age.desc(), member.id.asc())
+                .fetch());
+    }
+}
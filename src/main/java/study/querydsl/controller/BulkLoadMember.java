@@ -0,0 +1,32 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import study.querydsl.service.MemberBulkLoadService;
+
+/**
+ * member.bulk-load.enabled=true 로 기동하면 대량 데이터를 적재한다.
+ * ex) --member.bulk-load.enabled=true --member.bulk-load.teams=1000 --member.bulk-load.members=5000000
+ */
+@Component
+@ConditionalOnProperty(name = "member.bulk-load.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class BulkLoadMember implements ApplicationRunner {
+
+    private final MemberBulkLoadService memberBulkLoadService;
+
+    @Value("${member.bulk-load.teams:100}")
+    private int teams;
+
+    @Value("${member.bulk-load.members:1000000}")
+    private int members;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        memberBulkLoadService.load(teams, members);
+    }
+}
@@ -1,11 +1,13 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberShards;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
@@ -28,8 +30,15 @@ public class InitMember {
         @PersistenceContext
         private EntityManager em;
 
+        @Autowired
+        private MemberShards memberShards;
+
         @Transactional
         public void init() {
+            if (memberShards.isEnabled()) {
+                initShards();
+                return;
+            }
             Team teamA = new Team("teamA");
             Team teamB = new Team("teamB");
 
@@ -41,6 +50,17 @@ public class InitMember {
                 em.persist(new Member("member" + i, i + 10, selectedTeam));
             }
         }
+
+        //샤드 모드에서는 기본 DataSource 에 저장할 수 없다. (MemberShardWriteGuard)
+        private void initShards() {
+            Team teamA = memberShards.saveTeam("teamA");
+            Team teamB = memberShards.saveTeam("teamB");
+
+            for (int i = 0; i < 100; i++) {
+                Team selectedTeam = i % 2 == 0 ? teamA : teamB;
+                memberShards.saveMember("member" + i, i + 10, selectedTeam.getId());
+            }
+        }
     }
 
 }
@@ -1,17 +1,34 @@
 package study.querydsl.controller;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberCursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRankingRepository;
 import study.querydsl.repository.MemberRepository;
 import study.querydsl.repository.MemberRepositoryCustom;
+import study.querydsl.repository.MemberSearchCache;
+import study.querydsl.repository.MemberSearchIndex;
+import study.querydsl.repository.MemberShards;
+import study.querydsl.service.MemberExportService;
 
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequiredArgsConstructor
@@ -19,10 +36,26 @@ public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberExportService memberExportService;
+    private final MemberSearchCache memberSearchCache;
+    private final MemberSearchIndex memberSearchIndex;
+    private final MemberRankingRepository memberRankingRepository;
+    private final MemberShards memberShards;
 
     @GetMapping("/v1/members")
     public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+        //메모리 인덱스가 준비되어 있으면 DB 를 거치지 않는다. 샤드 모드면 샤드 전체에서 검색 (인덱스는 꺼져 있다)
+        return memberSearchIndex.search(condition)
+                .orElseGet(() -> memberShards.isEnabled()
+                        ? memberRepository.search(condition)
+                        : memberJpaRepository.search(condition));
+    }
+
+    //검색 결과 전체를 한줄에 하나씩 JSON 으로 스트리밍 (NDJSON)
+    @GetMapping(value = "/v1/members/export", produces = MemberExportService.NDJSON)
+    public void exportMemberV1(MemberSearchCondition condition, HttpServletResponse response) throws IOException {
+        response.setContentType(MemberExportService.NDJSON);
+        memberExportService.export(condition, response.getOutputStream());
     }
 
     @GetMapping("/v2/members")
@@ -33,4 +66,51 @@ public class MemberController {
     public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
         return memberRepository.searchPageComplex(condition, pageable);
     }
+
+    @GetMapping("/v4/members")
+    public MemberCursorSlice searchMemberV4(MemberSearchCondition condition,
+                                           @RequestParam(required = false) String cursor,
+                                           @RequestParam(defaultValue = "20") int size) {
+        return memberRepository.searchSlice(condition, cursor, size);
+    }
+
+    //전체 개수 없이 다음 페이지 존재 여부만 (count 쿼리 없음)
+    @GetMapping("/v5/members")
+    public Slice<MemberTeamDto> searchMemberV5(MemberSearchCondition condition, Pageable pageable) {
+        return memberRepository.searchPageNoCount(condition, pageable);
+    }
+
+    //팀별 나이 많은 순 limit 명, 한번에 MAX_ROWS / limit 개 팀까지. 다음 팀들은 마지막 팀 id 를 afterTeamId 로
+    @GetMapping("/v1/members/top-by-team")
+    public List<MemberTeamDto> topMembersByTeamV1(@RequestParam(defaultValue = "3") int limit,
+                                                  @RequestParam(required = false) Long afterTeamId) {
+        return memberRankingRepository.findTopByTeam(limit, afterTeamId);
+    }
+
+    //나이가 소속 팀 평균보다 많은 회원 (limit 명까지)
+    @GetMapping("/v1/members/above-team-average")
+    public List<MemberTeamDto> aboveTeamAverageV1(@RequestParam(defaultValue = "100") int limit) {
+        return memberRankingRepository.findAboveTeamAverage(limit);
+    }
+
+    //잘못된 cursor, 인덱스로 처리할 수 없는 정렬, 범위를 벗어난 limit 등
+    //다른 예외는 메시지에 내부 정보가 있을 수 있으므로 그대로 노출하지 않는다.
+    @ExceptionHandler(InvalidSearchRequestException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, String> badRequest(InvalidSearchRequestException e) {
+        return Map.of("message", e.getMessage());
+    }
+
+    //검색 캐시 크기 조정용 통계
+    @GetMapping("/members/cache/stats")
+    public Map<String, Object> searchCacheStats() {
+        CacheStats stats = memberSearchCache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", memberSearchCache.size());
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        return result;
+    }
 }
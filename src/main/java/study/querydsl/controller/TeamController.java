@@ -0,0 +1,22 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.TeamStatsRepository;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatsRepository teamStatsRepository;
+
+    //group by 대신 team_stats 집계 테이블을 읽는다.
+    @GetMapping("/v1/teams/stats")
+    public List<TeamStatsDto> teamStatsV1() {
+        return teamStatsRepository.findAll();
+    }
+}
@@ -0,0 +1,54 @@
+package study.querydsl.datasource;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * 쓰기를 커밋한 요청(세션)의 마지막 쓰기 시각 (System.nanoTime)
+ * ReplicaRoutingDataSource 는 이 시각부터 primary-after-write 동안 그 요청(세션)의 read-only 트랜잭션만 primary 로 보낸다.
+ * 다른 요청은 계속 replica 를 쓴다.
+ * - HTTP 요청 안 : 요청 속성에 남기고, 세션이 있으면 세션에도 남긴다. (다음 요청에서 방금 쓴 값을 읽도록)
+ * - 요청 밖 (스케줄러, 배치, 테스트) : 스레드에 남긴다.
+ */
+public final class ReadYourWrites {
+
+    static final String ATTRIBUTE = ReadYourWrites.class.getName() + ".lastWrite";
+
+    private static final ThreadLocal<Long> LAST_WRITE = new ThreadLocal<>();
+
+    private ReadYourWrites() {
+    }
+
+    public static void markWrite() {
+        Long now = System.nanoTime();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            LAST_WRITE.set(now);
+            return;
+        }
+        attributes.setAttribute(ATTRIBUTE, now, RequestAttributes.SCOPE_REQUEST);
+        if (hasSession(attributes)) {
+            attributes.setAttribute(ATTRIBUTE, now, RequestAttributes.SCOPE_SESSION);
+        }
+    }
+
+    //없으면 null
+    static Long lastWrite() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return LAST_WRITE.get();
+        }
+        Long inRequest = (Long) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (inRequest != null || !hasSession(attributes)) {
+            return inRequest;
+        }
+        return (Long) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_SESSION);
+    }
+
+    //세션을 새로 만들지 않는다.
+    private static boolean hasSession(RequestAttributes attributes) {
+        return attributes instanceof ServletRequestAttributes
+                && ((ServletRequestAttributes) attributes).getRequest().getSession(false) != null;
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * datasource.routing.enabled=true 면 기본 DataSource 대신 ReplicaRoutingDataSource 를 쓴다.
+ * p6spy 는 이 DataSource 를 감싸므로 SQL 로그, 검색 캐시 무효화, SQL 수 집계는 replica 로 간 SQL 도 그대로 잡는다.
+ * primary 풀에는 기본 DataSource 처럼 spring.datasource.hikari.* (maximum-pool-size 등) 를 적용한다.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(DataSourceProperties dataSourceProperties, ReplicaRoutingProperties properties,
+                                               Environment environment) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        primary.setPoolName("primary");
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < properties.getReplicas().size(); i++) {
+            ReplicaRoutingProperties.Replica replica = properties.getReplicas().get(i);
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(dataSourceProperties.determineDriverClassName())
+                    .url(replica.getUrl())
+                    .username(replica.getUsername())
+                    .password(replica.getPassword())
+                    .build();
+            pool.setPoolName("replica-" + i);
+            pool.setReadOnly(true);
+            pool.setInitializationFailTimeout(-1); //replica 가 내려가 있어도 기동은 한다.
+            replicas.add(pool);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, properties.getMaxLag(), properties.getCheckInterval(),
+                properties.getPrimaryAfterWrite());
+    }
+}
@@ -0,0 +1,212 @@
+package study.querydsl.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * read-only 트랜잭션은 replica 로, 나머지는 primary 로 보내는 DataSource
+ * - 커넥션은 첫 SQL 실행 시점에 얻는다. (LazyConnectionDataSourceProxy)
+ *   트랜잭션 시작 시점에는 아직 read-only 여부가 TransactionSynchronizationManager 에 없기 때문
+ * - replica 는 사용 가능한 것들을 돌아가면서 쓴다. 모두 쓸 수 없으면 primary 로 보낸다.
+ * - 사용 가능 여부는 check-interval 마다 heartbeat 로 판단한다.
+ *   primary 의 replica_heartbeat 에 현재 시각을 기록하고, replica 에 복제된 값이 max-lag 보다 오래됐거나 읽을 수 없으면 제외한다.
+ *   커넥션을 얻다가 실패해도 바로 제외하고 다음 replica(또는 primary)로 넘어간다.
+ * 복제 지연 때문에 replica 에서 방금 커밋한 데이터가 안 보일 수 있다.
+ * - 쓰기 SQL 을 실행한 트랜잭션이 커밋되면(ReplicaWriteTracker) 그 요청(세션)의 read-only 트랜잭션은 primary-after-write 동안 primary 로 보낸다.
+ *   범위는 ReadYourWrites 참고. 다른 요청은 계속 replica 를 쓴다.
+ *   primary 커넥션을 얻는 것만으로는 쓰기로 보지 않는다. (트랜잭션 밖 조회, 조회만 한 read-write 트랜잭션, 검색 인덱스 rebuild)
+ * - 다른 요청이 쓴 값은 max-lag 안에서 늦게 보일 수 있다.
+ *   검색 캐시는 replica 에서 읽은 트랜잭션의 결과를 최근 쓰기 후 max-lag 동안 저장하지 않는다. (isCurrentTransactionOnReplica)
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    static final String CREATE_HEARTBEAT = "create table if not exists replica_heartbeat (id int primary key, beat timestamp not null)";
+    static final String WRITE_HEARTBEAT = "merge into replica_heartbeat key (id) values (1, ?)";
+    static final String READ_HEARTBEAT = "select beat from replica_heartbeat where id = 1";
+
+    //replica 커넥션을 얻은 트랜잭션에 바인딩하는 키
+    private static final Object REPLICA_READ = new Object();
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Duration maxLag;
+    private final long primaryAfterWriteNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicaPools,
+                                    Duration maxLag, Duration checkInterval, Duration primaryAfterWrite) {
+        this.primary = primary;
+        this.maxLag = maxLag;
+        this.primaryAfterWriteNanos = primaryAfterWrite.toNanos();
+        for (HikariDataSource pool : replicaPools) {
+            replicas.add(new Replica(pool));
+        }
+        setTargetDataSource(new Router());
+
+        createHeartbeatTable();
+        beat();
+        checkReplicas();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = checkInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            beat();
+            checkReplicas();
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 각 replica 의 heartbeat 를 읽어서 사용 가능 여부를 갱신한다.
+     */
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection con = replica.pool.getConnection();
+                 Statement stmt = con.createStatement();
+                 ResultSet rs = stmt.executeQuery(READ_HEARTBEAT)) {
+                if (!rs.next()) {
+                    replica.update(false, "heartbeat 없음");
+                    continue;
+                }
+                Duration lag = Duration.between(rs.getTimestamp(1).toInstant(), Instant.now());
+                replica.update(lag.compareTo(maxLag) <= 0, "lag " + lag.toMillis() + "ms");
+            } catch (SQLException | RuntimeException e) {
+                replica.update(false, e.getMessage());
+            }
+        }
+    }
+
+    //현재 요청(세션, 스레드)의 최근 쓰기 이후 primary-after-write 가 지나지 않았는지 (nanoTime 은 차이로만 비교한다)
+    boolean recentlyWritten() {
+        Long lastWrite = ReadYourWrites.lastWrite();
+        return lastWrite != null && System.nanoTime() - lastWrite < primaryAfterWriteNanos;
+    }
+
+    /**
+     * 현재 트랜잭션이 replica 커넥션으로 읽었는지
+     * 트랜잭션 밖이거나 아직 커넥션을 얻지 않았으면 false
+     */
+    public static boolean isCurrentTransactionOnReplica() {
+        return TransactionSynchronizationManager.hasResource(REPLICA_READ);
+    }
+
+    public int availableReplicas() {
+        return (int) replicas.stream().filter(replica -> replica.available).count();
+    }
+
+    HikariDataSource getPrimary() {
+        return primary;
+    }
+
+    private void createHeartbeatTable() {
+        try (Connection con = primary.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute(CREATE_HEARTBEAT);
+        } catch (SQLException e) {
+            throw new IllegalStateException("replica_heartbeat 테이블 생성 실패", e);
+        }
+    }
+
+    private void beat() {
+        try (Connection con = primary.getConnection(); PreparedStatement ps = con.prepareStatement(WRITE_HEARTBEAT)) {
+            ps.setTimestamp(1, Timestamp.from(Instant.now()));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            log.warn("primary heartbeat 기록 실패: {}", e.getMessage());
+        }
+    }
+
+    //HikariDataSource 처럼 컨텍스트 종료 시 close 로 정리한다.
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        replicas.forEach(replica -> replica.pool.close());
+        primary.close();
+    }
+
+    private class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+                return primary.getConnection();
+            }
+            if (!recentlyWritten()) {
+                int start = Math.floorMod(next.getAndIncrement(), Math.max(replicas.size(), 1));
+                for (int i = 0; i < replicas.size(); i++) {
+                    Replica replica = replicas.get((start + i) % replicas.size());
+                    if (!replica.available) {
+                        continue;
+                    }
+                    try {
+                        Connection connection = replica.pool.getConnection();
+                        bindReplicaRead();
+                        return connection;
+                    } catch (SQLException e) {
+                        replica.update(false, e.getMessage());
+                    }
+                }
+            }
+            return primary.getConnection();
+        }
+
+        private void bindReplicaRead() {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()
+                    || TransactionSynchronizationManager.hasResource(REPLICA_READ)) {
+                return;
+            }
+            TransactionSynchronizationManager.bindResource(REPLICA_READ, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(REPLICA_READ);
+                }
+            });
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return primary.getConnection(username, password);
+        }
+    }
+
+    private static class Replica {
+
+        private final HikariDataSource pool;
+        private volatile boolean available;
+
+        Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+
+        void update(boolean available, String reason) {
+            if (this.available != available) {
+                log.warn("replica {} {} ({})", pool.getPoolName(), available ? "사용" : "제외", reason);
+            }
+            this.available = available;
+        }
+    }
+}
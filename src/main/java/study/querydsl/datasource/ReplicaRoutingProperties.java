@@ -0,0 +1,31 @@
+package study.querydsl.datasource;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "datasource.routing")
+public class ReplicaRoutingProperties {
+
+    private boolean enabled = false; //true 면 read-only 트랜잭션을 replica 로 보낸다. primary 는 spring.datasource
+    private List<Replica> replicas = new ArrayList<>();
+    private Duration maxLag = Duration.ofSeconds(5); //heartbeat 가 이보다 오래됐으면 그 replica 는 쓰지 않는다.
+    private Duration checkInterval = Duration.ofSeconds(1); //replica 상태 확인, primary heartbeat 기록 주기
+    private Duration primaryAfterWrite = Duration.ofSeconds(5); //쓰기 커밋 이후 이 시간 동안은 read-only 트랜잭션도 primary 로. max-lag 이상으로 둔다.
+
+    @Getter
+    @Setter
+    public static class Replica {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
@@ -0,0 +1,56 @@
+package study.querydsl.datasource;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/**
+ * p6spy 훅으로 쓰기 SQL 을 감지해서, 그 트랜잭션이 커밋되면 ReadYourWrites 에 쓰기 시각을 남긴다.
+ * 쓰기 SQL 을 실행하지 않은 트랜잭션(조회만 한 read-write 트랜잭션 등)은 남기지 않는다. 트랜잭션 밖(auto commit)이면 바로 남긴다.
+ * 한 트랜잭션 안의 여러 쓰기는 한번만 등록한다.
+ */
+@Component
+@ConditionalOnProperty(prefix = "datasource.routing", name = "enabled", havingValue = "true")
+public class ReplicaWriteTracker extends SimpleJdbcEventListener {
+
+    //use_sql_comments 로 앞에 붙는 /* ... */ 주석은 건너뛴다. (MemberSearchCacheInvalidator.WRITE_SQL 과 같은 방식, 테이블 무관)
+    static final Pattern WRITE_SQL = Pattern.compile(
+            "^\\s*(/\\*.*?\\*/\\s*)*(insert|update|delete|merge)\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String sql = statementInformation.getSql();
+        if (e == null && sql != null && WRITE_SQL.matcher(sql).find()) {
+            onWrite();
+        }
+    }
+
+    private void onWrite() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            ReadYourWrites.markWrite();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                ReadYourWrites.markWrite();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(ReplicaWriteTracker.this);
+            }
+        });
+    }
+}
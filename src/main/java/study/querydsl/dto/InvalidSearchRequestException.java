@@ -0,0 +1,16 @@
+package study.querydsl.dto;
+
+/**
+ * 클라이언트가 보낸 검색 요청 값(정렬, cursor, size, limit 등)이 잘못된 경우
+ * 메시지는 그대로 응답에 노출되므로 내부 정보를 담지 않는다. (MemberController -> 400)
+ */
+public class InvalidSearchRequestException extends RuntimeException {
+
+    public InvalidSearchRequestException(String message) {
+        super(message);
+    }
+
+    public InvalidSearchRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
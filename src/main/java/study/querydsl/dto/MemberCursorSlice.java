@@ -0,0 +1,19 @@
+package study.querydsl.dto;
+
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+public class MemberCursorSlice {
+
+    private final List<MemberTeamDto> content;
+    private final boolean hasNext;
+    private final String nextCursor; //다음 페이지 요청시 그대로 넘겨준다. 마지막 페이지면 null
+
+    public MemberCursorSlice(List<MemberTeamDto> content, boolean hasNext, String nextCursor) {
+        this.content = List.copyOf(content);
+        this.hasNext = hasNext;
+        this.nextCursor = nextCursor;
+    }
+}
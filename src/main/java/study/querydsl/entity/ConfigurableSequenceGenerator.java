@@ -0,0 +1,63 @@
+package study.querydsl.entity;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * allocation size 를 설정으로 바꿀 수 있는 pooled-lo 시퀀스 생성기
+ * spring.jpa.properties.study.id.allocation_size                : 전체 기본값
+ * spring.jpa.properties.study.id.allocation_size.{sequence_name} : 시퀀스별 값
+ * pooled-lo 는 시퀀스 값을 블록의 시작값으로 쓰기 때문에, 시퀀스를 직접 읽는 다른 클라이언트와 섞여도 id 가 겹치지 않는다.
+ * 시퀀스의 increment by 는 allocation size 와 같아야 한다. (db/sequences.sql 참고)
+ *
+ * 샤드별 EntityManagerFactory 에서는 study.id.shard_count, study.id.shard_index 를 주면
+ * id = 시퀀스 값 * shard_count + shard_index 로 만들어서 샤드끼리 id 가 겹치지 않고, id 만으로 샤드를 알 수 있다. (MemberShards)
+ */
+public class ConfigurableSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String ALLOCATION_SIZE = "study.id.allocation_size";
+    public static final int DEFAULT_ALLOCATION_SIZE = 50;
+    public static final String SHARD_COUNT = "study.id.shard_count";
+    public static final String SHARD_INDEX = "study.id.shard_index";
+
+    private long shardCount = 1;
+    private long shardIndex = 0;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+        String sequenceName = params.getProperty(SEQUENCE_PARAM);
+
+        Object allocationSize = settings.get(ALLOCATION_SIZE + "." + sequenceName);
+        if (allocationSize == null) {
+            allocationSize = settings.get(ALLOCATION_SIZE);
+        }
+        params.setProperty(INCREMENT_PARAM, String.valueOf(allocationSize == null ? DEFAULT_ALLOCATION_SIZE : allocationSize));
+        params.putIfAbsent(OPT_PARAM, StandardOptimizerDescriptor.POOLED_LO.getExternalName());
+        if (settings.get(SHARD_COUNT) != null) {
+            shardCount = Long.parseLong(settings.get(SHARD_COUNT).toString());
+            shardIndex = Long.parseLong(settings.get(SHARD_INDEX).toString());
+        }
+
+        super.configure(type, params, serviceRegistry);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
+        Serializable id = super.generate(session, object);
+        if (shardCount == 1) {
+            return id;
+        }
+        return ((Number) id).longValue() * shardCount + shardIndex;
+    }
+}
@@ -0,0 +1,28 @@
+package study.querydsl.entity;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.SharedCacheMode;
+
+/**
+ * member.entity-cache.enabled=true 일 때만 2차 캐시(@Cacheable 엔티티, CACHEABLE 힌트 쿼리)를 쓴다. 기본은 꺼짐
+ * 꺼져 있으면 sharedCache.mode 도 NONE 이라 @Cacheable 이 붙어 있어도 캐시하지 않는다.
+ * spring.jpa.properties 보다 나중에 적용되므로 on/off 는 이 프로퍼티 하나로 정한다.
+ */
+@Configuration
+public class EntityCacheConfig {
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(@Value("${member.entity-cache.enabled:false}") boolean enabled) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, String.valueOf(enabled));
+            properties.put(AvailableSettings.USE_QUERY_CACHE, String.valueOf(enabled));
+            properties.put(AvailableSettings.JPA_SHARED_CACHE_MODE,
+                    (enabled ? SharedCacheMode.ENABLE_SELECTIVE : SharedCacheMode.NONE).name());
+        };
+    }
+}
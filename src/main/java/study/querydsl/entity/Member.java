@@ -4,10 +4,26 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import study.querydsl.repository.MemberSearchIndexListener;
+import study.querydsl.repository.MemberShardWriteGuard;
+import study.querydsl.repository.TeamStatsListener;
 
 import javax.persistence.*;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"), //usernameEq
+        @Index(name = "idx_member_age_id", columnList = "age, member_id"), //ageGoe, ageLoe, keyset 정렬 (age, member_id)
+        @Index(name = "idx_member_team_age", columnList = "team_id, age") //팀 조인 + 나이 조건
+})
+@EntityListeners({MemberShardWriteGuard.class, MemberSearchIndexListener.class, TeamStatsListener.class})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @NoArgsConstructor
 @ToString(onlyExplicitlyIncluded = true)
@@ -15,7 +31,9 @@ public class Member {
 
     @ToString.Include
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq")
+    @GenericGenerator(name = "member_seq", strategy = "study.querydsl.entity.ConfigurableSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "member_seq")) //pooled-lo : 시퀀스 한번 호출로 id 를 allocation size 만큼 사용
     @Column(name = "member_id", nullable = false)
     private Long id;
     @ToString.Include
@@ -28,6 +46,12 @@ public class Member {
     @JoinColumn(name = "team_id") //외래키 컬럼키값명
     private Team team;
 
+    //DB 에 반영된 팀, 나이. TeamStatsListener 가 변경 전 값을 빼고 새 값을 더할 때 사용한다.
+    @Transient
+    private Long persistedTeamId;
+    @Transient
+    private int persistedAge;
+
     public Member(String username, int age, Team team) {
         this.username = username;
         this.age = age;
@@ -45,8 +69,24 @@ public class Member {
         this(username, 0);
     }
 
+    /**
+     * 연관관계 편의 메서드
+     * 팀의 members 컬렉션이 이미 메모리에 로딩된 경우에만 맞춰준다.
+     * 로딩되지 않은 팀(프록시)이나 컬렉션은 건드리지 않으므로 팀 인원수와 상관없이 FK 만 바뀐다. (UPDATE 1번)
+     */
     public void changeTeam(Team team) {
         this.team = team;
-        team.getMembers().add(this);
+        if (Hibernate.isInitialized(team) && Hibernate.isInitialized(team.getMembers())) {
+            team.getMembers().add(this);
+        }
+    }
+
+    //엔티티 리스너(TeamStatsListener)가 먼저 호출된 다음에 갱신된다.
+    @PostLoad
+    @PostPersist
+    @PostUpdate
+    void markPersisted() {
+        this.persistedTeamId = team == null ? null : team.getId(); //프록시여도 초기화하지 않는다.
+        this.persistedAge = age;
     }
 }
@@ -4,12 +4,23 @@ import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import study.querydsl.repository.MemberSearchIndexListener;
+import study.querydsl.repository.MemberShardWriteGuard;
+import study.querydsl.repository.TeamStatsListener;
 
 import javax.persistence.*;
 import java.util.ArrayList;
 import java.util.List;
 
 @Entity
+@Table(indexes = @Index(name = "idx_team_name", columnList = "name")) //teamNameEq
+@EntityListeners({MemberShardWriteGuard.class, MemberSearchIndexListener.class, TeamStatsListener.class})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Getter
 @ToString(onlyExplicitlyIncluded = true)
 @NoArgsConstructor(access = AccessLevel.PROTECTED) //JPA에서는 protected 까지 열려있음, private 쓰면 에러남
@@ -17,7 +28,9 @@ public class Team {
 
     @ToString.Include
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "team_seq")
+    @GenericGenerator(name = "team_seq", strategy = "study.querydsl.entity.ConfigurableSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "team_seq")) //pooled-lo : 시퀀스 한번 호출로 id 를 allocation size 만큼 사용
     @Column(name = "team_id", nullable = false)
     private Long id;
     @ToString.Include
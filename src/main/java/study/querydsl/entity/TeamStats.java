@@ -0,0 +1,33 @@
+package study.querydsl.entity;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * 팀별 회원 수, 나이 합계, 최소/최대 나이를 미리 집계해둔 테이블 (team_stats)
+ * 조회는 프로젝션으로만 하고, 갱신은 TeamStatsRepository 가 SQL 로 직접 한다. (엔티티로는 변경하지 않는다)
+ */
+@Entity
+@Getter
+@ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class TeamStats {
+
+    @Id
+    @Column(name = "team_id")
+    private Long teamId; //Team 과 연관관계(FK)를 두지 않는다. 팀 insert/delete 와 순서를 맞추지 않아도 된다.
+    @Column(nullable = false)
+    private long memberCount;
+    @Column(nullable = false)
+    private long ageSum;
+    private Integer minAge;
+    private Integer maxAge;
+    @Column(nullable = false)
+    private boolean stale; //최소/최대 나이였던 회원이 빠져서 minAge, maxAge 를 다시 구해야 한다.
+}
@@ -0,0 +1,118 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberCursorSlice;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 검색 메서드별, 조건 조합(shape)별 지표
+ * - member.search            : 실행시간
+ * - member.search.rows       : 반환 row 수
+ * - member.search.statements : 실행된 SQL 수 (같은 스레드에서 실행된 것만, 캐시 hit 이면 0)
+ * - member.search.count.time : count 쿼리 실행시간
+ * 대상은 조건(MemberSearchCondition)을 받는 search 메서드뿐이다. (save, findById 같은 메서드는 제외)
+ * method x shape x outcome 조합이 많으므로 percentile histogram 은 남기지 않는다. (분포는 http.server.requests 의 histogram 으로 본다)
+ * 컨트롤러 지표는 actuator 의 http.server.requests 를 사용한다.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class SearchMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    @Around("(execution(public * study.querydsl.repository.MemberRepositoryImpl.search*(..))" +
+            " || execution(public * study.querydsl.repository.MemberJpaRepository.search*(..)))" +
+            " && !execution(* study.querydsl.repository.MemberJpaRepository.searchStream(..))")
+    public Object record(ProceedingJoinPoint joinPoint) throws Throwable {
+        String method = joinPoint.getSignature().getDeclaringType().getSimpleName() + "." + joinPoint.getSignature().getName();
+        Tags tags = Tags.of("method", method, "shape", shapeOf(joinPoint.getArgs()));
+
+        SqlStatementCounter.Counts before = SqlStatementCounter.snapshot();
+        long start = System.nanoTime();
+        String outcome = "error";
+        Object result = null;
+        try {
+            result = joinPoint.proceed();
+            outcome = "success";
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            SqlStatementCounter.Counts counts = SqlStatementCounter.since(before);
+
+            Timer.builder("member.search")
+                    .tags(tags).tag("outcome", outcome)
+                    .register(registry)
+                    .record(elapsed, TimeUnit.NANOSECONDS);
+            DistributionSummary.builder("member.search.rows")
+                    .tags(tags)
+                    .register(registry)
+                    .record(rows(result));
+            DistributionSummary.builder("member.search.statements")
+                    .tags(tags)
+                    .register(registry)
+                    .record(counts.getStatements());
+            if (counts.getCountQueries() > 0) {
+                Timer.builder("member.search.count.time")
+                        .tags(tags)
+                        .register(registry)
+                        .record(counts.getCountQueryNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    //ex) username+teamName, 조건이 없으면 none, 조건을 받지 않는 메서드는 n/a
+    static String shapeOf(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof MemberSearchCondition) {
+                MemberSearchCondition condition = (MemberSearchCondition) arg;
+                StringJoiner shape = new StringJoiner("+");
+                shape.setEmptyValue("none");
+                if (condition.getUsername() != null) {
+                    shape.add("username");
+                }
+                if (condition.getTeamName() != null) {
+                    shape.add("teamName");
+                }
+                if (condition.getAgeGoe() != null) {
+                    shape.add("ageGoe");
+                }
+                if (condition.getAgeLoe() != null) {
+                    shape.add("ageLoe");
+                }
+                return shape.toString();
+            }
+        }
+        return "n/a";
+    }
+
+    private static int rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        if (result instanceof MemberCursorSlice) {
+            return ((MemberCursorSlice) result).getContent().size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,8 @@
+package study.querydsl.metrics;
+
+public class SqlBudgetExceededException extends RuntimeException {
+
+    public SqlBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,38 @@
+package study.querydsl.metrics;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 컨트롤러 요청마다 SqlStatementBudget 범위를 연다. 예산은 URL 패턴(/v1/members 등) 기준이다.
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlBudgetInterceptor implements HandlerInterceptor, WebMvcConfigurer {
+
+    private final SqlStatementBudget sqlStatementBudget;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(this).excludePathPatterns("/actuator/**");
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        sqlStatementBudget.begin(pattern == null ? request.getRequestURI() : pattern.toString());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        sqlStatementBudget.end();
+    }
+}
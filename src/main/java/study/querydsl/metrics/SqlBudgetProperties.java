@@ -0,0 +1,26 @@
+package study.querydsl.metrics;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "sql-budget")
+public class SqlBudgetProperties {
+
+    private boolean enabled = true;
+    private boolean fail = false; //true 면 예산 초과시 예외, false 면 경고 로그만
+    private int maxStatements = 10; //요청 하나에서 실행 가능한 SQL 수
+    private int maxRepeats = 5; //같은 모양의 SQL 반복 허용 수. 넘으면 N+1 로 판단
+    private Map<String, Integer> endpoints = new HashMap<>(); //URL 패턴별 maxStatements. ex) "[/v1/members]": 1
+
+    public int maxStatementsFor(String endpoint) {
+        return endpoints.getOrDefault(endpoint, maxStatements);
+    }
+}
@@ -0,0 +1,128 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * 요청 단위 SQL 예산
+ * begin ~ end 사이에 같은 스레드에서 실행된 SQL 을 센다. (SqlStatementCounter 가 p6spy 훅에서 호출)
+ * 요청을 대신해서 다른 스레드에서 실행하는 SQL 은 runIn 으로 같은 Scope 에 센다. (ParallelPageExecutor)
+ * - 전체 SQL 수가 예산을 넘거나
+ * - 같은 모양(파라미터 자리만 다른)의 SQL 이 maxRepeats 번을 넘게 반복되면 (N+1)
+ * 경고 로그를 남기거나, fail 설정이면 SqlBudgetExceededException 을 던져 해당 SQL 실행 전에 요청을 실패시킨다.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SqlStatementBudget {
+
+    //use_sql_comments 로 앞에 붙는 /* ... */ 주석
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final SqlBudgetProperties properties;
+    private final ObjectProvider<MeterRegistry> registry; //DataSource(p6spy) 보다 늦게 만들어지므로 지연 조회
+    private final ThreadLocal<Scope> current = new ThreadLocal<>();
+
+    public void begin(String name) {
+        if (properties.isEnabled()) {
+            current.set(new Scope(name, properties.maxStatementsFor(name)));
+        }
+    }
+
+    public Scope end() {
+        Scope scope = current.get();
+        current.remove();
+        return scope;
+    }
+
+    //현재 스레드의 Scope, 없으면 null
+    public Scope current() {
+        return current.get();
+    }
+
+    /**
+     * 다른 스레드에서 scope 를 이어서 쓴다. 끝나면 그 스레드의 원래 Scope 로 되돌린다.
+     */
+    public <R> R runIn(Scope scope, Supplier<R> task) {
+        Scope previous = current.get();
+        if (scope == null) {
+            current.remove();
+        } else {
+            current.set(scope);
+        }
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                current.remove();
+            } else {
+                current.set(previous);
+            }
+        }
+    }
+
+    void onStatement(String sql) {
+        Scope scope = current.get();
+        if (scope == null || sql == null) {
+            return;
+        }
+        int statements = scope.statements.incrementAndGet();
+        String shape = shapeOf(sql);
+        int repeats = scope.shapes.merge(shape, 1, Integer::sum);
+
+        if (statements == scope.maxStatements + 1) {
+            violation(scope, "budget", "SQL " + statements + "개 실행 (예산 " + scope.maxStatements + ")");
+        }
+        if (repeats == properties.getMaxRepeats() + 1) {
+            violation(scope, "repeat", "같은 SQL 이 " + repeats + "번 반복, N+1 의심 : " + shape);
+        }
+    }
+
+    private void violation(Scope scope, String type, String message) {
+        scope.violations.add(message);
+        registry.ifAvailable(r -> r.counter("sql.budget.violations", "endpoint", scope.name, "type", type).increment());
+        if (properties.isFail()) {
+            throw new SqlBudgetExceededException(scope.name + " : " + message);
+        }
+        log.warn("[sql-budget] {} : {}", scope.name, message);
+    }
+
+    static String shapeOf(String sql) {
+        String withoutComment = COMMENT.matcher(sql).replaceAll(" ");
+        return WHITESPACE.matcher(withoutComment).replaceAll(" ").trim();
+    }
+
+    //runIn 으로 여러 스레드가 같이 쓸 수 있다.
+    @Getter
+    public static class Scope {
+        private final String name;
+        private final int maxStatements;
+        @Getter(AccessLevel.NONE)
+        private final AtomicInteger statements = new AtomicInteger();
+        private final Map<String, Integer> shapes = new ConcurrentHashMap<>();
+        private final List<String> violations = new CopyOnWriteArrayList<>();
+
+        Scope(String name, int maxStatements) {
+            this.name = name;
+            this.maxStatements = maxStatements;
+        }
+
+        public int getStatements() {
+            return statements.get();
+        }
+    }
+}
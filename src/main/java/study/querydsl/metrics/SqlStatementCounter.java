@@ -0,0 +1,92 @@
+package study.querydsl.metrics;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/**
+ * p6spy 훅으로 스레드별 실행 SQL 수와 count 쿼리 실행시간을 누적한다.
+ * 값은 계속 증가만 하므로 구간 측정은 전후 snapshot 의 차이로 구한다. (테스트에서 쿼리 수 검증에도 사용)
+ * 실행 직전에 SqlStatementBudget 에 알려서 요청별 예산을 검사한다.
+ */
+@Component
+@RequiredArgsConstructor
+public class SqlStatementCounter extends SimpleJdbcEventListener {
+
+    //use_sql_comments 로 앞에 붙는 /* ... */ 주석은 건너뛴다.
+    static final Pattern COUNT_SQL = Pattern.compile(
+            "^\\s*(/\\*.*?\\*/\\s*)*select\\s+count\\(", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final ThreadLocal<Counts> COUNTS = ThreadLocal.withInitial(Counts::new);
+
+    private final SqlStatementBudget sqlStatementBudget;
+
+    @Override
+    public void onBeforeAnyExecute(StatementInformation statementInformation) {
+        sqlStatementBudget.onStatement(statementInformation.getSql());
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        Counts counts = COUNTS.get();
+        counts.statements++;
+        String sql = statementInformation.getSql();
+        if (sql != null && COUNT_SQL.matcher(sql).find()) {
+            counts.countQueries++;
+            counts.countQueryNanos += timeElapsedNanos;
+        }
+    }
+
+    public static Counts snapshot() {
+        return COUNTS.get().copy();
+    }
+
+    public static Counts since(Counts before) {
+        Counts now = COUNTS.get();
+        Counts diff = new Counts();
+        diff.statements = now.statements - before.statements;
+        diff.countQueries = now.countQueries - before.countQueries;
+        diff.countQueryNanos = now.countQueryNanos - before.countQueryNanos;
+        return diff;
+    }
+
+    /**
+     * 다른 스레드에서 이 스레드 대신 실행한 SQL 수를 더한다. (ParallelPageExecutor 의 count 쿼리)
+     */
+    public static void add(Counts delta) {
+        Counts counts = COUNTS.get();
+        counts.statements += delta.statements;
+        counts.countQueries += delta.countQueries;
+        counts.countQueryNanos += delta.countQueryNanos;
+    }
+
+    public static class Counts {
+        private long statements;
+        private long countQueries;
+        private long countQueryNanos;
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getCountQueries() {
+            return countQueries;
+        }
+
+        public long getCountQueryNanos() {
+            return countQueryNanos;
+        }
+
+        private Counts copy() {
+            Counts copy = new Counts();
+            copy.statements = statements;
+            copy.countQueries = countQueries;
+            copy.countQueryNanos = countQueryNanos;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.impl.JPADeleteClause;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import com.querydsl.jpa.impl.JPAUpdateClause;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 벌크 update/delete 를 member_id 범위(chunk) 단위로 나눠서 실행한다.
+ * - chunk 마다 트랜잭션을 커밋해서 한번에 잡는 락과 트랜잭션 크기를 제한한다.
+ * - 벌크 연산은 영속성 컨텍스트를 거치지 않으므로 시작 전에 호출한 쪽 영속성 컨텍스트(OSIV 등)를 flush, clear 하고
+ *   끝난 뒤에 다시 clear 한다. (em.flush(), em.clear() 를 직접 챙기지 않아도 이후 조회가 DB 값을 본다)
+ * - 다음 chunk 는 조건에 맞는 다음 member_id 부터 시작한다. 행이 없는 id 구간은 트랜잭션 없이 건너뛴다.
+ * - team_stats 는 chunk 트랜잭션 안에서 chunk 범위의 변경 전후 팀별 집계 차이만 반영한다. (팀 전체를 chunk 마다 다시 집계하지 않는다)
+ *   최소/최대 나이였던 회원이 빠졌을 수 있는 팀은 마지막 chunk 뒤에 한번만 다시 집계한다.
+ * - chunk 사이에 pause 만큼 쉬어서 다른 트랜잭션이 끼어들 수 있게 한다.
+ * 트랜잭션 경계를 직접 관리하므로 트랜잭션 밖에서 호출해야 한다. 샤드 모드에서는 쓸 수 없다.
+ */
+@Slf4j
+@Repository
+public class MemberBulkOperations {
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberSearchIndex memberSearchIndex;
+    private final TeamStatsRepository teamStatsRepository;
+    private final MemberShards shards;
+    private final long chunkSize;
+    private final long pauseMillis;
+
+    public MemberBulkOperations(EntityManager em,
+                                JPAQueryFactory queryFactory,
+                                PlatformTransactionManager transactionManager,
+                                MemberSearchIndex memberSearchIndex,
+                                TeamStatsRepository teamStatsRepository,
+                                MemberShards shards,
+                                @Value("${member.bulk.chunk-size:1000}") long chunkSize,
+                                @Value("${member.bulk.pause-millis:0}") long pauseMillis) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.memberSearchIndex = memberSearchIndex;
+        this.teamStatsRepository = teamStatsRepository;
+        this.shards = shards;
+        this.chunkSize = chunkSize;
+        this.pauseMillis = pauseMillis;
+    }
+
+    /**
+     * ex) update(member.age.goe(20), clause -> clause.set(member.age, member.age.add(1)), progress -> log.info(...))
+     */
+    public Result update(Predicate where, Consumer<JPAUpdateClause> set, Consumer<Progress> listener) {
+        return execute(where, range -> {
+            JPAUpdateClause clause = queryFactory.update(member).where(where, range);
+            set.accept(clause);
+            return clause.execute();
+        }, listener);
+    }
+
+    public Result delete(Predicate where, Consumer<Progress> listener) {
+        return execute(where, range -> {
+            JPADeleteClause clause = queryFactory.delete(member).where(where, range);
+            return clause.execute();
+        }, listener);
+    }
+
+    private Result execute(Predicate where, ToLongFunction<Predicate> bulk, Consumer<Progress> listener) {
+        shards.requireUnsharded("벌크 update/delete"); //기본 DataSource 의 member 만 바꾼다.
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("MemberBulkOperations 는 chunk 마다 커밋하므로 트랜잭션 밖에서 호출해야 합니다.");
+        }
+        //벌크 연산은 엔티티 이벤트가 없으므로 메모리 인덱스에 직접 알린다.
+        memberSearchIndex.beginBulk();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.flush();
+                em.clear();
+            });
+            return executeChunks(where, bulk, listener);
+        } finally {
+            em.clear();
+            memberSearchIndex.endBulk();
+        }
+    }
+
+    private Result executeChunks(Predicate where, ToLongFunction<Predicate> bulk, Consumer<Progress> listener) {
+        long start = System.nanoTime();
+
+        NumberExpression<Long> min = member.id.min();
+        NumberExpression<Long> max = member.id.max();
+        Tuple idRange = transactionTemplate.execute(status -> queryFactory
+                .select(min, max)
+                .from(member)
+                .where(where)
+                .fetchOne());
+        Long minId = idRange == null ? null : idRange.get(min);
+        Long maxId = idRange == null ? null : idRange.get(max);
+        if (minId == null) {
+            return new Result(0, 0, System.nanoTime() - start);
+        }
+
+        long affected = 0;
+        int chunks = 0;
+        Set<Long> staleTeamIds = new HashSet<>();
+        Long chunkFrom = minId;
+        while (chunkFrom != null && chunkFrom <= maxId) {
+            long from = chunkFrom;
+            long to = Math.min(from + chunkSize - 1, maxId);
+            long chunkStart = System.nanoTime();
+            Chunk chunk = transactionTemplate.execute(status -> {
+                Map<Long, TeamStatsRepository.RangeStats> before = teamStatsRepository.rangeStats(from, to);
+                long count = bulk.applyAsLong(member.id.between(from, to));
+                if (count > 0) {
+                    //벌크 연산은 엔티티 이벤트가 없으므로 변경 전후 범위의 팀별 집계 차이를 반영한다.
+                    staleTeamIds.addAll(teamStatsRepository.applyRangeDelta(before, teamStatsRepository.rangeStats(from, to)));
+                }
+                return new Chunk(count, nextId(where, to));
+            });
+            affected += chunk.rows;
+            chunks++;
+            listener.accept(new Progress(from, to, maxId, chunk.rows, affected, System.nanoTime() - chunkStart));
+            chunkFrom = chunk.nextFrom;
+            if (chunkFrom != null) {
+                pause();
+            }
+        }
+
+        if (!staleTeamIds.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> teamStatsRepository.recomputeStale(staleTeamIds));
+        }
+
+        Result result = new Result(affected, chunks, System.nanoTime() - start);
+        log.info("bulk operation done. affected={}, chunks={}, elapsed={}ms", affected, chunks, result.getElapsedMillis());
+        return result;
+    }
+
+    //to 뒤의 행은 아직 건드리지 않았으므로 원래 조건으로 찾는다.
+    private Long nextId(Predicate where, long to) {
+        return queryFactory
+                .select(member.id.min())
+                .from(member)
+                .where(where, member.id.gt(to))
+                .fetchOne();
+    }
+
+    private void pause() {
+        if (pauseMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("벌크 연산이 중단되었습니다.", e);
+        }
+    }
+
+    private static class Chunk {
+        private final long rows;
+        private final Long nextFrom;
+
+        Chunk(long rows, Long nextFrom) {
+            this.rows = rows;
+            this.nextFrom = nextFrom;
+        }
+    }
+
+    @Getter
+    public static class Progress {
+        private final long fromId;
+        private final long toId;
+        private final long maxId;
+        private final long chunkRows;
+        private final long totalRows;
+        private final long chunkElapsedMillis;
+
+        Progress(long fromId, long toId, long maxId, long chunkRows, long totalRows, long chunkElapsedNanos) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.maxId = maxId;
+            this.chunkRows = chunkRows;
+            this.totalRows = totalRows;
+            this.chunkElapsedMillis = chunkElapsedNanos / 1_000_000;
+        }
+    }
+
+    @Getter
+    public static class Result {
+        private final long affectedRows;
+        private final int chunks;
+        private final long elapsedMillis;
+
+        Result(long affectedRows, int chunks, long elapsedNanos) {
+            this.affectedRows = affectedRows;
+            this.chunks = chunks;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+        }
+    }
+}
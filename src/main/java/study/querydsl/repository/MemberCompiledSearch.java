@@ -0,0 +1,84 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.JPQLSerializer;
+import com.querydsl.jpa.impl.JPAProvider;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAUtil;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * search 의 shape 별 컴파일 캐시
+ * 조건 4개의 null 여부 조합(shape)은 16가지 뿐이므로 shape 마다 처음 한번만 Querydsl 쿼리를 만들어 JPQL 로 직렬화하고,
+ * 이후에는 캐시된 JPQL 에 값만 바인딩한다. (요청마다 표현식 트리를 만들고 직렬화하는 비용이 없다)
+ * 조건과 조인은 MemberSearchPredicates 의 것을 그대로 쓴다. (withParams, joinTeam)
+ * JPQL 파싱 결과는 Hibernate query plan cache 가 JPQL 문자열 기준으로 재사용한다.
+ * 트랜잭션은 호출하는 쪽(MemberRepositoryImpl, 샤드)의 것을 쓴다.
+ */
+@Component
+public class MemberCompiledSearch {
+
+    private static final QMemberTeamDto PROJECTION = new QMemberTeamDto(
+            member.id.as("memberId"),
+            member.username,
+            member.age,
+            team.id.as("teamId"),
+            team.name.as("teamName"));
+
+    private final AtomicReferenceArray<Plan> plans = new AtomicReferenceArray<>(MemberSearchPredicates.SHAPE_COUNT);
+
+    public List<MemberTeamDto> search(EntityManager em, MemberSearchCondition condition) {
+        Plan plan = plan(em, condition);
+        Query query = em.createQuery(plan.jpql);
+        JPAUtil.setConstants(query, plan.constants, MemberSearchPredicates.params(condition));
+        List<?> rows = query.getResultList();
+        return rows.stream()
+                .map(row -> PROJECTION.newInstance((Object[]) row))
+                .collect(Collectors.toList());
+    }
+
+    //동시에 처음 들어온 같은 shape 는 각자 컴파일해도 결과가 같으므로 먼저 넣은 것을 쓴다.
+    Plan plan(EntityManager em, MemberSearchCondition condition) {
+        int shape = MemberSearchPredicates.shapeOf(condition);
+        Plan plan = plans.get(shape);
+        if (plan == null) {
+            plans.compareAndSet(shape, null, compile(em, condition));
+            plan = plans.get(shape);
+        }
+        return plan;
+    }
+
+    private static Plan compile(EntityManager em, MemberSearchCondition condition) {
+        JPAQuery<MemberTeamDto> query = new JPAQuery<Void>(em)
+                .select(PROJECTION)
+                .from(member);
+        MemberSearchPredicates.joinTeam(query, condition)
+                .where(MemberSearchPredicates.withParams(condition));
+
+        JPQLSerializer serializer = new JPQLSerializer(JPAProvider.getTemplates(em), em);
+        serializer.serialize(query.getMetadata(), false, null);
+        return new Plan(serializer.toString(), List.copyOf(serializer.getConstants()));
+    }
+
+    //constants 는 JPQL 의 ?1, ?2 .. 순서. 조건 자리는 Param 이라 값은 요청마다 params 로 채운다.
+    static class Plan {
+        final String jpql;
+        final List<Object> constants;
+
+        Plan(String jpql, List<Object> constants) {
+            this.jpql = jpql;
+            this.constants = constants;
+        }
+    }
+}
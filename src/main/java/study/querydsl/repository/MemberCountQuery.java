@@ -0,0 +1,67 @@
+package study.querydsl.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 검색 페이징용 count 쿼리
+ * - team 조건이 있을 때만 team 을 조인한다. team.name 조건이 걸리면 left join 과 결과가 같으므로 inner join 을 쓴다.
+ *   (team 이 없는 member 는 어차피 조건에서 빠지고, team 쪽 인덱스부터 읽는 실행계획을 쓸 수 있다)
+ * - 결과가 approximate-threshold 이상이면 조건별로 approximate-ttl 동안 그 값을 재사용한다.
+ *   큰 집합의 count 는 비싸고, 화면의 전체 개수는 조금 틀려도 되기 때문. 쓰기가 있어도 ttl 전에는 갱신되지 않는다.
+ * 조건은 검색과 같은 MemberSearchPredicates 를 쓴다.
+ */
+@Component
+public class MemberCountQuery {
+
+    private final MemberSearchCache searchCache;
+    private final long approximateThreshold;
+    private final Cache<MemberSearchCache.Key, Long> approximateCounts;
+
+    public MemberCountQuery(MemberSearchCache searchCache,
+                            @Value("${member.search.count.approximate-threshold:100000}") long approximateThreshold,
+                            @Value("${member.search.count.approximate-ttl:60s}") Duration approximateTtl) {
+        this.searchCache = searchCache;
+        this.approximateThreshold = approximateThreshold;
+        this.approximateCounts = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(approximateTtl)
+                .build();
+    }
+
+    public long count(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        MemberSearchCache.Key key = MemberSearchCache.Key.of("count", condition, Pageable.unpaged());
+        Long approximate = approximateCounts.getIfPresent(key);
+        if (approximate != null) {
+            return approximate;
+        }
+
+        long count = query(queryFactory, condition).fetchOne();
+        //쓰기가 있었던 트랜잭션의 count 는 커밋 전 데이터가 섞여 있으므로 남기지 않는다.
+        if (count >= approximateThreshold && !searchCache.hasPendingWrite()) {
+            approximateCounts.put(key, count);
+        }
+        return count;
+    }
+
+    JPAQuery<Long> query(JPAQueryFactory queryFactory, MemberSearchCondition condition) {
+        JPAQuery<Long> query = queryFactory
+                .select(member.count())
+                .from(member);
+        if (MemberSearchPredicates.hasTeamCondition(condition)) {
+            query.join(member.team, team);
+        }
+        return query.where(MemberSearchPredicates.of(condition));
+    }
+}
@@ -1,10 +1,14 @@
 package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
-import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
@@ -14,17 +18,28 @@ import study.querydsl.entity.Member;
 import javax.persistence.EntityManager;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
+/**
+ * 조회 메서드는 read-only 트랜잭션으로 실행한다. (호출한 쪽에 트랜잭션이 있으면 그대로 참여)
+ * - Hibernate 세션 default read-only: 엔티티 스냅샷(dirty checking 용 복사본)을 만들지 않는다.
+ * - FlushMode.MANUAL: 쿼리 전, 커밋 시 flush 하지 않는다.
+ * - JDBC Connection.setReadOnly(true)
+ * 쓰기 메서드는 @Transactional 로 따로 지정한다.
+ */
 @Repository
+@Transactional(readOnly = true)
 @RequiredArgsConstructor
 public class MemberJpaRepository {
 
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberSearchCache searchCache;
 
+    @Transactional
     public void save(Member member) {
         em.persist(member);
     }
@@ -57,9 +72,10 @@ public class MemberJpaRepository {
                 .fetch();
     }
 
+    /**
+     * BooleanBuilder 로 조건을 조립하는 방식. searchByWhereParam 과 같은 조건, 같은 조인 (캐시 없음)
+     */
     public List<MemberTeamDto> searchByBuilder(MemberSearchCondition condition) {
-
-
         BooleanBuilder builder = new BooleanBuilder();
         if (StringUtils.hasText(condition.getUsername())) {
             builder.and(member.username.eq(condition.getUsername()));
@@ -74,7 +90,7 @@ public class MemberJpaRepository {
             builder.and(member.age.loe(condition.getAgeLoe()));
         }
 
-        return queryFactory
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -82,45 +98,70 @@ public class MemberJpaRepository {
                         team.id.as("teamId"),
                         team.name.as("teamName")
                 ))
-                .from(member)
-                .leftJoin(member.team, team)
+                .from(member);
+        //팀 이름 조건이 있으면 inner join (MemberSearchPredicates.joinTeam 과 같다)
+        if (StringUtils.hasText(condition.getTeamName())) {
+            query.join(member.team, team);
+        } else {
+            query.leftJoin(member.team, team);
+        }
+        return query
                 .where(builder)
                 .fetch();
     }
 
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        return searchCache.get("jpaSearch", condition, Pageable.unpaged(), () -> searchByWhereParam(condition));
+    }
+
+    /**
+     * where 다중 파라미터(MemberSearchPredicates) 방식. search 의 캐시 없는 버전
+     */
+    public List<MemberTeamDto> searchByWhereParam(MemberSearchCondition condition) {
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
                         member.age,
                         team.id.as("teamId"),
                         team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .from(member);
+        return MemberSearchPredicates.joinTeam(query, condition)
+                .where(MemberSearchPredicates.of(condition))
                 .fetch();
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return username == null ? null : member.username.eq(username);
+    /**
+     * forward-only 커서로 한건씩 읽어온다. 결과 전체를 메모리에 올리지 않는다.
+     * DTO 프로젝션이라 엔티티가 영속성 컨텍스트에 쌓이지 않는다.
+     * 반환된 Stream 은 트랜잭션 안에서 소비하고 반드시 close 해야 한다.
+     */
+    @Transactional(readOnly = true, propagation = Propagation.MANDATORY)
+    public Stream<MemberTeamDto> searchStream(MemberSearchCondition condition, int fetchSize) {
+        return stream(queryFactory, condition, fetchSize);
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return teamName == null ? null : team.name.eq(teamName);
+    /**
+     * 샤드 EntityManager 에서 같은 검색을 스트림으로 읽는다. (MemberShards.forEach 안에서 소비하고 close 한다)
+     */
+    public static Stream<MemberTeamDto> searchStream(EntityManager shard, MemberSearchCondition condition, int fetchSize) {
+        return stream(new JPAQueryFactory(shard), condition, fetchSize);
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe == null ? null : member.age.goe(ageGoe);
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe == null ? null : member.age.loe(ageLoe);
+    private static Stream<MemberTeamDto> stream(JPAQueryFactory queryFactory, MemberSearchCondition condition, int fetchSize) {
+        JPAQuery<MemberTeamDto> query = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member);
+        return MemberSearchPredicates.joinTeam(query, condition)
+                .where(MemberSearchPredicates.of(condition))
+                .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                .setHint(QueryHints.READ_ONLY, true)
+                .stream();
     }
 
 
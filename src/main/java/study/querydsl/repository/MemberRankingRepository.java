@@ -0,0 +1,139 @@
+package study.querydsl.repository;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberTeamDto;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 팀별 순위/평균 비교 조회를 윈도우 함수로 한번에 처리한다.
+ * JPAExpressions 상관 서브쿼리(QueryDslBasicTest.subQuery, subQueryGoe)는 회원 행마다 같은 팀을 다시 집계하지만,
+ * 윈도우 함수는 팀(partition)별로 한번 정렬/집계한 결과를 모든 행이 같이 쓴다.
+ * JPQL(Hibernate 5)은 over 절을 지원하지 않으므로 네이티브 쿼리로 작성한다.
+ * 팀이 있는 회원만 대상이다. 결과는 팀 id, 나이 내림차순, 회원 id 순서
+ */
+@Repository
+@Transactional(readOnly = true)
+public class MemberRankingRepository {
+
+    public static final int MAX_LIMIT = 100;
+    public static final int MAX_ROWS = 1000; //한 번에 돌려주는 전체 row 수 상한
+
+    //나이가 같으면 먼저 가입한(id 가 작은) 회원이 앞 순위. 팀마다 정확히 limit 명까지
+    //afterTeamId 다음 팀부터 teams 개 팀만 partition 한다.
+    private static final String TOP_BY_TEAM =
+            "select member_id, username, age, team_id, team_name from ("
+                    + " select m.member_id, m.username, m.age, t.team_id, t.name team_name,"
+                    + " row_number() over (partition by m.team_id order by m.age desc, m.member_id) rn"
+                    + " from member m join team t on t.team_id = m.team_id"
+                    + " where m.team_id in (select distinct team_id from member"
+                    + " where team_id > :afterTeamId order by team_id limit :teams)"
+                    + ") ranked where rn <= :limit"
+                    + " order by team_id, rn";
+
+    //age > avg 대신 age * count > sum 으로 비교해서 평균의 소수점/반올림에 영향받지 않는다.
+    private static final String ABOVE_TEAM_AVERAGE =
+            "select member_id, username, age, team_id, team_name from ("
+                    + " select m.member_id, m.username, m.age, t.team_id, t.name team_name,"
+                    + " count(*) over (partition by m.team_id) team_count,"
+                    + " sum(m.age) over (partition by m.team_id) team_age_sum"
+                    + " from member m join team t on t.team_id = m.team_id"
+                    + ") stats where age * team_count > team_age_sum"
+                    + " order by team_id, age desc, member_id";
+
+    private static final Comparator<MemberTeamDto> TEAM_AGE_DESC = Comparator
+            .comparing(MemberTeamDto::getTeamId)
+            .thenComparing(MemberTeamDto::getAge, Comparator.reverseOrder())
+            .thenComparing(MemberTeamDto::getMemberId);
+
+    private final EntityManager em;
+    private final MemberShards shards;
+
+    public MemberRankingRepository(EntityManager em, MemberShards shards) {
+        this.em = em;
+        this.shards = shards;
+    }
+
+    /**
+     * 팀별 나이가 많은 순서로 limit 명
+     */
+    public List<MemberTeamDto> findTopByTeam(int limit) {
+        return findTopByTeam(limit, null);
+    }
+
+    /**
+     * 팀별 나이가 많은 순서로 limit 명, afterTeamId 다음 팀부터 MAX_ROWS / limit 개 팀까지 (팀 id 순서)
+     * 팀 수 x limit 이 MAX_ROWS 를 넘지 않는다. 다음 팀들은 결과의 마지막 팀 id 를 afterTeamId 로 넘겨서 조회한다.
+     */
+    public List<MemberTeamDto> findTopByTeam(int limit, Long afterTeamId) {
+        checkLimit(limit, MAX_LIMIT);
+        int teams = MAX_ROWS / limit;
+        List<MemberTeamDto> rows = query(em -> fetch(em.createNativeQuery(TOP_BY_TEAM)
+                        .setParameter("limit", limit)
+                        .setParameter("teams", teams)
+                        .setParameter("afterTeamId", afterTeamId == null ? Long.MIN_VALUE : afterTeamId)
+                        .getResultList()),
+                Integer.MAX_VALUE);
+        return firstTeams(rows, teams);
+    }
+
+    /**
+     * 나이가 소속 팀 평균보다 많은 회원, 결과 순서대로 limit 명까지
+     */
+    public List<MemberTeamDto> findAboveTeamAverage(int limit) {
+        checkLimit(limit, MAX_ROWS);
+        return query(em -> fetch(em.createNativeQuery(ABOVE_TEAM_AVERAGE).setMaxResults(limit).getResultList()),
+                limit);
+    }
+
+    private static void checkLimit(int limit, int max) {
+        if (limit < 1 || limit > max) {
+            throw new InvalidSearchRequestException("limit 은 1 ~ " + max + " 이어야 합니다. limit=" + limit);
+        }
+    }
+
+    //샤드는 team_id 로 나뉘므로 팀별 결과는 샤드 안에서 완성된다. 샤드별 결과를 순서대로 합쳐서 limit 개까지
+    private List<MemberTeamDto> query(Function<EntityManager, List<MemberTeamDto>> query, int limit) {
+        if (shards.isEnabled()) {
+            return MemberShards.merge(shards.scatter(query), TEAM_AGE_DESC, 0, limit);
+        }
+        return query.apply(em);
+    }
+
+    //샤드마다 teams 개 팀씩 오므로 합친 결과에서 앞의 teams 개 팀만 남긴다. (rows 는 팀 id 순서)
+    private static List<MemberTeamDto> firstTeams(List<MemberTeamDto> rows, int teams) {
+        List<MemberTeamDto> result = new ArrayList<>();
+        int teamCount = 0;
+        Long lastTeamId = null;
+        for (MemberTeamDto row : rows) {
+            if (!row.getTeamId().equals(lastTeamId)) {
+                if (++teamCount > teams) {
+                    break;
+                }
+                lastTeamId = row.getTeamId();
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    //네이티브 쿼리의 bigint 는 BigInteger 로 올 수 있으므로 Number 로 받는다.
+    private static List<MemberTeamDto> fetch(List<?> rows) {
+        return rows.stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new MemberTeamDto(
+                        ((Number) row[0]).longValue(),
+                        (String) row[1],
+                        ((Number) row[2]).intValue(),
+                        ((Number) row[3]).longValue(),
+                        (String) row[4]))
+                .collect(Collectors.toList());
+    }
+}
@@ -2,6 +2,7 @@ package study.querydsl.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.querydsl.QuerydslPredicateExecutor;
+import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
 
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.List;
 public interface MemberRepository extends JpaRepository<Member, Long>, MemberRepositoryCustom, QuerydslPredicateExecutor<Member> {
 
     //select m from Member m where m.username = :username
+    @Transactional(readOnly = true)
     List<Member> findByUsername(String username);
 
 }
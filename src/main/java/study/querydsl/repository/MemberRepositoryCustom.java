@@ -2,6 +2,8 @@ package study.querydsl.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import study.querydsl.dto.MemberCursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 
@@ -10,6 +12,10 @@ import java.util.List;
 public interface MemberRepositoryCustom {
     List<MemberTeamDto> search(MemberSearchCondition condition);
     Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable);
+    Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy);
     Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable);
+    Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy);
+    Slice<MemberTeamDto> searchPageNoCount(MemberSearchCondition condition, Pageable pageable);
+    MemberCursorSlice searchSlice(MemberSearchCondition condition, String cursor, int size);
 
 }
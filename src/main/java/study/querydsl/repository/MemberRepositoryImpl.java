@@ -4,64 +4,189 @@ import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQuery;
 import com.querydsl.jpa.impl.JPAQueryFactory;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberCursor;
+import study.querydsl.dto.MemberCursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static study.querydsl.entity.QMember.member;
 import static study.querydsl.entity.QTeam.team;
 
 @RequiredArgsConstructor
+@Transactional(readOnly = true) //검색만 한다. -> MemberJpaRepository
 //Impl 명칭은 규칙이다
 public class MemberRepositoryImpl implements MemberRepositoryCustom {
 
+    private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final MemberCompiledSearch compiledSearch;
+    private final MemberSearchCache searchCache;
+    private final MemberSearchCoalescer searchCoalescer;
+    private final MemberCountQuery countQuery;
+    private final ParallelPageExecutor parallelPageExecutor;
+    private final MemberShards shards;
+
+    public static final int MAX_SLICE_SIZE = 1000; //searchSlice 한번에 조회할 수 있는 최대 개수
+
+    @Value("${member.search.page-strategy:OFFSET}")
+    private PageStrategy defaultPageStrategy;
 
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
-        return queryFactory
+        return cached("search", condition, Pageable.unpaged(), () -> fetchSearch(condition));
+    }
+
+    //캐시 -> 동시에 들어온 같은 검색 합치기 -> DB
+    private <T> T cached(String method, MemberSearchCondition condition, Pageable pageable, Supplier<T> loader) {
+        return searchCache.get(method, condition, pageable,
+                () -> searchCoalescer.execute(method, condition, pageable, loader));
+    }
+
+    //shape 별로 컴파일해둔 JPQL 로 조회 -> MemberCompiledSearch
+    private List<MemberTeamDto> fetchSearch(MemberSearchCondition condition) {
+        if (shards.isEnabled()) {
+            return shards.scatter(shard -> compiledSearch.search(shard, condition)).stream()
+                    .flatMap(List::stream)
+                    .collect(Collectors.toList());
+        }
+        return compiledSearch.search(em, condition);
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        return searchPageSimple(condition, pageable, defaultPageStrategy);
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy) {
+        //방식에 따라 같은 페이지의 순서가 다를 수 있으므로 캐시 키를 나눈다.
+        return cached("searchPageSimple:" + strategy, condition, pageable, () -> fetchPageSimple(condition, pageable, strategy));
+    }
+
+    private Page<MemberTeamDto> fetchPageSimple(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy) {
+        if (shards.isEnabled()) {
+            return shardedPage(condition, pageable);
+        }
+        List<MemberTeamDto> result = pageContent(queryFactory, condition, pageable, strategy);
+
+        long totalCount = countQuery.count(queryFactory, condition);
+
+        return new PageImpl<>(result, pageable, totalCount);
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return searchPageComplex(condition, pageable, defaultPageStrategy);
+    }
+
+    @Override
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy) {
+        return cached("searchPageComplex:" + strategy, condition, pageable, () -> fetchPageComplex(condition, pageable, strategy));
+    }
+
+    private Page<MemberTeamDto> fetchPageComplex(MemberSearchCondition condition, Pageable pageable, PageStrategy strategy) {
+        if (shards.isEnabled()) {
+            return shardedPage(condition, pageable);
+        }
+        if (parallelPageExecutor.isEnabled()) {
+            //content 는 이 트랜잭션에서, count 는 별도 커넥션에서 동시에 실행
+            return parallelPageExecutor.getPage(pageable,
+                    em -> pageContent(new JPAQueryFactory(em), condition, pageable, strategy),
+                    em -> countQuery.count(new JPAQueryFactory(em), condition));
+        }
+
+        List<MemberTeamDto> result = pageContent(queryFactory, condition, pageable, strategy);
+        return PageableExecutionUtils.getPage(result, pageable, () -> countQuery.count(queryFactory, condition));
+    }
+
+    private List<MemberTeamDto> pageContent(JPAQueryFactory queryFactory, MemberSearchCondition condition, Pageable pageable, PageStrategy strategy) {
+        return strategy == PageStrategy.DEFERRED_JOIN
+                ? deferredJoinContent(queryFactory, condition, pageable)
+                : offsetContent(queryFactory, condition, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+    }
+
+    private List<MemberTeamDto> offsetContent(JPAQueryFactory queryFactory, MemberSearchCondition condition, Sort sort, long offset, long limit) {
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
                         member.age,
                         team.id.as("teamId"),
                         team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
+                .from(member);
+        return MemberSearchPredicates.joinTeam(query, condition)
+                .where(MemberSearchPredicates.of(condition))
+                .orderBy(MemberSort.orderBy(sort))
+                .offset(offset) //몇번째 페이지부터 시작할 것인지
+                .limit(limit) //몇개 가져올 것인지
                 .fetch();
     }
 
-    private BooleanExpression usernameEq(String username) {
-        return username == null ? null : member.username.eq(username);
+    /**
+     * 샤드별로 정렬된 결과를 합쳐서 페이지를 만든다. count 는 샤드별 count 의 합
+     * 샤드 방식에서는 PageStrategy 와 parallel-count 를 쓰지 않는다.
+     */
+    private Page<MemberTeamDto> shardedPage(MemberSearchCondition condition, Pageable pageable) {
+        List<MemberTeamDto> content = shardedContent(condition, pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+        return PageableExecutionUtils.getPage(content, pageable, () -> shards
+                .scatter(em -> countQuery.query(new JPAQueryFactory(em), condition).fetchOne())
+                .stream()
+                .mapToLong(Long::longValue)
+                .sum());
     }
 
-    private BooleanExpression teamNameEq(String teamName) {
-        return teamName == null ? null : team.name.eq(teamName);
+    private List<MemberTeamDto> shardedContent(MemberSearchCondition condition, Sort sort, long offset, int limit) {
+        Comparator<MemberTeamDto> comparator = MemberSort.comparator(sort); //허용되지 않는 정렬은 샤드에 보내기 전에 거절
+        shards.checkOffset(offset);
+        //전체 순서의 offset + limit 번째까지가 한 샤드에 몰려 있을 수 있으므로 샤드마다 앞에서부터 offset + limit 개를 읽는다.
+        List<List<MemberTeamDto>> sorted = shards.scatter(
+                em -> offsetContent(new JPAQueryFactory(em), condition, sort, 0, offset + limit));
+        return MemberShards.merge(sorted, comparator, offset, limit);
     }
 
-    private BooleanExpression ageGoe(Integer ageGoe) {
-        return ageGoe == null ? null : member.age.goe(ageGoe);
-    }
-
-    private BooleanExpression ageLoe(Integer ageLoe) {
-        return ageLoe == null ? null : member.age.loe(ageLoe);
-    }
+    /**
+     * deferred join 페이징 -> PageStrategy.DEFERRED_JOIN
+     * id 페이지는 요청한 정렬(+ member_id)로 자르고, 프로젝션 결과도 그 순서대로 돌려준다.
+     */
+    private List<MemberTeamDto> deferredJoinContent(JPAQueryFactory queryFactory, MemberSearchCondition condition, Pageable pageable) {
+        JPAQuery<Long> idQuery = queryFactory
+                .select(member.id)
+                .from(member);
+        if (MemberSearchPredicates.hasTeamCondition(condition)) {
+            idQuery.join(member.team, team);
+        }
+        List<Long> ids = idQuery
+                .where(MemberSearchPredicates.of(condition))
+                .orderBy(MemberSort.orderBy(pageable.getSort()))
+                .offset(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .fetch();
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-    @Override
-    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> result = queryFactory
+        Map<Long, MemberTeamDto> byId = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
@@ -70,64 +195,86 @@ public class MemberRepositoryImpl implements MemberRepositoryCustom {
                         team.name.as("teamName")))
                 .from(member)
                 .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset()) //몇번째 페이지부터 시작할 것인지
-                .limit(pageable.getPageSize()) //몇개 가져올 것인지
-                .fetch();
+                .where(member.id.in(ids))
+                .fetch()
+                .stream()
+                .collect(Collectors.toMap(MemberTeamDto::getMemberId, Function.identity()));
 
-        Long totalCount = queryFactory
-                .select(member.count())
-                .from(member)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .fetchOne();
+        //in 절은 순서를 보장하지 않는다. 두 쿼리 사이에 삭제된 member 는 빠진다.
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-        return new PageImpl<>(result, pageable, totalCount);
+    /**
+     * count 쿼리 없는 페이징 (무한 스크롤용)
+     * size + 1 개를 조회해서 다음 페이지 존재 여부만 판단한다.
+     */
+    @Override
+    public Slice<MemberTeamDto> searchPageNoCount(MemberSearchCondition condition, Pageable pageable) {
+        return cached("searchPageNoCount", condition, pageable, () -> fetchPageNoCount(condition, pageable));
     }
 
+    private Slice<MemberTeamDto> fetchPageNoCount(MemberSearchCondition condition, Pageable pageable) {
+        //다음 페이지 존재 여부 확인용으로 하나 더
+        List<MemberTeamDto> result = shards.isEnabled()
+                ? shardedContent(condition, pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1)
+                : offsetContent(queryFactory, condition, pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1);
+
+        boolean hasNext = result.size() > pageable.getPageSize();
+        if (hasNext) {
+            result = result.subList(0, pageable.getPageSize());
+        }
+        return new SliceImpl<>(result, pageable, hasNext);
+    }
+
+    /**
+     * keyset(seek) 페이징
+     * offset 을 쓰지 않고 마지막으로 본 (age, member_id) 다음부터 조회하므로 깊은 페이지도 첫 페이지와 비용이 같다.
+     * size + 1 개를 조회해서 다음 페이지 존재 여부를 판단한다. size 는 1 ~ MAX_SLICE_SIZE
+     */
     @Override
-    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
-        List<MemberTeamDto> result = queryFactory
+    public MemberCursorSlice searchSlice(MemberSearchCondition condition, String cursor, int size) {
+        if (size < 1 || size > MAX_SLICE_SIZE) {
+            throw new InvalidSearchRequestException("size 는 1 ~ " + MAX_SLICE_SIZE + " 이어야 합니다. size=" + size);
+        }
+        MemberCursor after = cursor == null ? null : MemberCursor.decode(cursor);
+        List<MemberTeamDto> result = shards.isEnabled()
+                ? MemberShards.merge(shards.scatter(em -> sliceContent(new JPAQueryFactory(em), condition, after, size + 1)),
+                        MemberSort.comparator(Sort.by("age")), 0, size + 1) //age, member_id 순서
+                : sliceContent(queryFactory, condition, after, size + 1);
+
+        boolean hasNext = result.size() > size;
+        if (hasNext) {
+            result = result.subList(0, size);
+        }
+        String nextCursor = hasNext ? MemberCursor.of(result.get(result.size() - 1)).encode() : null;
+        return new MemberCursorSlice(result, hasNext, nextCursor);
+    }
+
+    private List<MemberTeamDto> sliceContent(JPAQueryFactory queryFactory, MemberSearchCondition condition, MemberCursor after, int limit) {
+        JPAQuery<MemberTeamDto> query = queryFactory
                 .select(new QMemberTeamDto(
                         member.id.as("memberId"),
                         member.username,
                         member.age,
                         team.id.as("teamId"),
                         team.name.as("teamName")))
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                )
-                .offset(pageable.getOffset()) //몇번째 페이지부터 시작할 것인지
-                .limit(pageable.getPageSize()) //몇개 가져올 것인지
+                .from(member);
+        return MemberSearchPredicates.joinTeam(query, condition)
+                .where(MemberSearchPredicates.of(condition))
+                .where(afterCursor(after))
+                .orderBy(member.age.asc(), member.id.asc())
+                .limit(limit)
                 .fetch();
-
-        JPAQuery<Long> countQuery = queryFactory
-                .select(member.count())
-                .from(member)
-                .leftJoin(member.team, team)
-                .where(
-                        usernameEq(condition.getUsername()),
-                        teamNameEq(condition.getTeamName()),
-                        ageGoe(condition.getAgeGoe()),
-                        ageLoe(condition.getAgeLoe())
-                );
-
-        return PageableExecutionUtils.getPage(result, pageable, countQuery::fetchOne);
     }
 
-
+    private BooleanExpression afterCursor(MemberCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        return member.age.gt(cursor.getAge())
+                .or(member.age.eq(cursor.getAge()).and(member.id.gt(cursor.getMemberId())));
+    }
 }
@@ -0,0 +1,159 @@
+package study.querydsl.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.datasource.ReplicaRoutingDataSource;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 검색 결과 캐시 (MemberSearchCondition + Pageable 기준)
+ * member/team 에 쓰기가 발생하면 전체 무효화한다. -> MemberSearchCacheInvalidator
+ * 캐시된 결과는 여러 요청이 나눠 가지므로 List 는 바꿀 수 없는 복사본으로 넣고 돌려준다. -> readOnly
+ * replica 에서 읽은 결과는 최근 쓰기 후 replica-lag 동안 캐시하지 않는다. (복제 전 예전 값이 ttl 동안 남지 않도록)
+ */
+@Component
+public class MemberSearchCache implements MeterBinder {
+
+    private final boolean enabled;
+    private final Cache<Key, Object> cache;
+    private final AtomicLong generation = new AtomicLong(); //쓰기 발생 횟수
+    private final long replicaLagNanos;
+    private volatile long lastWriteNanos;
+
+    public MemberSearchCache(@Value("${member.search-cache.enabled:true}") boolean enabled,
+                             @Value("${member.search-cache.maximum-size:10000}") long maximumSize,
+                             @Value("${member.search-cache.ttl:30s}") Duration ttl,
+                             @Value("${datasource.routing.max-lag:5s}") Duration replicaLag) {
+        this.enabled = enabled;
+        this.replicaLagNanos = replicaLag.toNanos();
+        this.lastWriteNanos = System.nanoTime() - replicaLagNanos;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String method, MemberSearchCondition condition, Pageable pageable, Supplier<T> loader) {
+        //현재 트랜잭션에서 쓰기가 있었다면 커밋 전 데이터가 다른 요청에 보이지 않도록 캐시를 거치지 않는다.
+        if (!enabled || hasPendingWrite()) {
+            return loader.get();
+        }
+        Key key = Key.of(method, condition, pageable);
+        Object cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        //조회 도중 쓰기가 있었다면 (auto flush, 다른 트랜잭션 커밋) 결과를 캐시에 넣지 않는다.
+        long generationBefore = generation.get();
+        T result = readOnly(loader.get());
+        if (result != null && generation.get() == generationBefore && !hasPendingWrite() && !possiblyStaleReplica()) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * member/team 쓰기 발생시 호출
+     * 즉시 비우고, 트랜잭션 안이라면 커밋(롤백) 이후에도 한번 더 비운다.
+     * (커밋 전에 다른 트랜잭션이 예전 데이터로 다시 채워넣을 수 있기 때문)
+     */
+    public void onWrite() {
+        markWrite();
+        cache.invalidateAll();
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+                && !TransactionSynchronizationManager.hasResource(this)) {
+            TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(MemberSearchCache.this);
+                    markWrite();
+                    cache.invalidateAll();
+                }
+            });
+        }
+    }
+
+    private void markWrite() {
+        generation.incrementAndGet();
+        lastWriteNanos = System.nanoTime();
+    }
+
+    //replica 에서 읽었고 마지막 쓰기(커밋) 이후 replica-lag 가 지나지 않았으면 아직 복제되지 않은 값일 수 있다.
+    private boolean possiblyStaleReplica() {
+        return ReplicaRoutingDataSource.isCurrentTransactionOnReplica()
+                && System.nanoTime() - lastWriteNanos < replicaLagNanos;
+    }
+
+    /**
+     * 여러 호출이 같은 결과 객체를 나눠 가질 때 한쪽에서 바꾸면 다른 쪽에도 보인다.
+     * List 는 바꿀 수 없는 복사본으로 바꾼다. (이미 List.copyOf 결과면 그대로)
+     * Page, Slice, MemberCursorSlice 의 content 는 원래 바꿀 수 없다.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T readOnly(T result) {
+        return result instanceof List ? (T) List.copyOf((List<?>) result) : result;
+    }
+
+    //현재 트랜잭션에서 member/team 쓰기가 있었는지
+    boolean hasPendingWrite() {
+        return TransactionSynchronizationManager.hasResource(this);
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    //cache.gets{result=hit|miss}, cache.evictions, cache.size 등 (cache=memberSearch)
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "memberSearch");
+    }
+
+    @lombok.Value
+    static class Key {
+        String method;
+        String username;
+        String teamName;
+        Integer ageGoe;
+        Integer ageLoe;
+        long offset;
+        int pageSize;
+        Sort sort;
+
+        //condition 은 mutable 이라 값만 복사해서 키로 쓴다.
+        static Key of(String method, MemberSearchCondition condition, Pageable pageable) {
+            boolean paged = pageable.isPaged();
+            return new Key(method,
+                    condition.getUsername(),
+                    condition.getTeamName(),
+                    condition.getAgeGoe(),
+                    condition.getAgeLoe(),
+                    paged ? pageable.getOffset() : -1,
+                    paged ? pageable.getPageSize() : -1,
+                    pageable.getSort());
+        }
+    }
+}
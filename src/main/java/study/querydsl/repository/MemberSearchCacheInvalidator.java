@@ -0,0 +1,49 @@
+package study.querydsl.repository;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/**
+ * p6spy 훅으로 member/team 에 대한 insert/update/delete 를 감지해서 검색 캐시를 비운다. (실행 중인 동일 검색 합치기도 끊는다)
+ * JDBC 단에서 잡기 때문에 em.persist, dirty checking 뿐 아니라 queryFactory.update(member) 같은 벌크 연산도 놓치지 않는다.
+ * 메모리 인덱스(MemberSearchIndex)에도 알린다. 하이버네이트가 엔티티를 저장하는 SQL 은 엔티티 리스너가 이미 반영하므로 빼고,
+ * 그 외의 SQL 만 스냅샷 재생성 대상이다. 엔티티 SQL 은 use_sql_comments 로 붙는 "insert/update/delete 엔티티 클래스명" 주석으로 구분한다.
+ * (주석이 없으면 모든 쓰기가 재생성 대상이 된다)
+ */
+@Component
+@RequiredArgsConstructor
+public class MemberSearchCacheInvalidator extends SimpleJdbcEventListener {
+
+    //use_sql_comments 로 앞에 붙는 /* ... */ 주석은 건너뛴다.
+    static final Pattern WRITE_SQL = Pattern.compile(
+            "^\\s*(/\\*.*?\\*/\\s*)*(insert\\s+into|update|delete\\s+from|delete|merge\\s+into)\\s+(member|team)\\b",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    //ex) /* update study.querydsl.entity.Member */ update member set ...
+    static final Pattern ENTITY_SQL = Pattern.compile(
+            "^\\s*/\\*\\s*(insert|update|delete)\\s+(" + Pattern.quote(Member.class.getName()) + "|" + Pattern.quote(Team.class.getName()) + ")\\s*\\*/");
+
+    private final MemberSearchCache memberSearchCache;
+    private final MemberSearchCoalescer memberSearchCoalescer;
+    private final ObjectProvider<MemberSearchIndex> memberSearchIndex; //JPA 설정이 DataSource(p6spy) 보다 늦게 만들어지므로 지연 조회
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        String sql = statementInformation.getSql();
+        if (sql != null && WRITE_SQL.matcher(sql).find()) {
+            memberSearchCache.onWrite();
+            memberSearchCoalescer.onWrite();
+            if (!ENTITY_SQL.matcher(sql).find()) {
+                memberSearchIndex.ifAvailable(MemberSearchIndex::onExternalWrite);
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 같은 검색(MemberSearchCondition + Pageable)이 동시에 들어오면 DB 조회는 한번만 하고 결과를 나눠 갖는다. (single-flight)
+ * - 먼저 들어온 호출(leader)만 쿼리를 실행하고, 그 사이에 들어온 같은 검색은 leader 의 결과를 기다린다.
+ * - 기다리는 시간은 max-wait 으로 제한한다. 넘기면 기다리지 않고 직접 조회한다.
+ * - leader 가 실패하면 기다리던 호출은 각자 직접 조회한다. (leader 요청의 SqlBudgetExceededException 같은 예외를 나눠 받지 않는다)
+ * - 결과는 여러 호출이 나눠 가지므로 List 는 바꿀 수 없는 복사본으로 돌려준다. -> MemberSearchCache.readOnly
+ * - member/team 쓰기가 감지되면 실행 중인 조회에는 더 이상 합류시키지 않는다. 쓰기가 있었던 트랜잭션은 합류하지 않는다.
+ * - member.search.coalesce 카운터 (result=leader|collapsed|timeout|retry)
+ */
+@Component
+public class MemberSearchCoalescer {
+
+    private final ConcurrentMap<MemberSearchCache.Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MemberSearchCache searchCache;
+    private final ObjectProvider<MeterRegistry> registry; //DataSource(p6spy) 보다 늦게 만들어지므로 지연 조회
+    private final boolean enabled;
+    private final Duration maxWait;
+    private final AtomicInteger waiting = new AtomicInteger(); //leader 의 결과를 기다리는 호출 수
+
+    public MemberSearchCoalescer(MemberSearchCache searchCache,
+                                 ObjectProvider<MeterRegistry> registry,
+                                 @Value("${member.search.coalesce.enabled:true}") boolean enabled,
+                                 @Value("${member.search.coalesce.max-wait:2s}") Duration maxWait) {
+        this.searchCache = searchCache;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.maxWait = maxWait;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String method, MemberSearchCondition condition, Pageable pageable, Supplier<T> loader) {
+        if (!enabled || searchCache.hasPendingWrite()) {
+            return loader.get();
+        }
+        MemberSearchCache.Key key = MemberSearchCache.Key.of(method, condition, pageable);
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            return (T) await(method, running, loader);
+        }
+
+        count(method, "leader");
+        try {
+            T result = MemberSearchCache.readOnly(loader.get());
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, future);
+        }
+    }
+
+    private Object await(String method, CompletableFuture<Object> running, Supplier<?> loader) {
+        try {
+            Object result = waitFor(running);
+            count(method, "collapsed");
+            return result;
+        } catch (TimeoutException e) {
+            count(method, "timeout");
+            return loader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("동일 검색 결과를 기다리는 중 인터럽트", e);
+        } catch (ExecutionException e) {
+            //leader 의 실패는 leader 요청의 것이다. (예산 초과, 타임아웃 등) 기다리던 호출은 직접 조회한다.
+            count(method, "retry");
+            return loader.get();
+        }
+    }
+
+    //기다리는 동안만 waiting 에 센다.
+    private Object waitFor(CompletableFuture<Object> running) throws InterruptedException, ExecutionException, TimeoutException {
+        waiting.incrementAndGet();
+        try {
+            return running.get(maxWait.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * member/team 쓰기 발생시 호출 -> MemberSearchCacheInvalidator
+     * 이미 기다리고 있는 호출은 그대로 두고, 이후 들어오는 검색은 새로 조회한다.
+     */
+    public void onWrite() {
+        inFlight.clear();
+    }
+
+    int inFlightSize() {
+        return inFlight.size();
+    }
+
+    int waitingSize() {
+        return waiting.get();
+    }
+
+    private void count(String method, String result) {
+        registry.ifAvailable(r -> r.counter("member.search.coalesce", "method", method, "result", result).increment());
+    }
+}
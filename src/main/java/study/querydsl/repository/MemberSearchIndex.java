@@ -0,0 +1,509 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * MemberTeamDto 프로젝션을 메모리에 컬럼 형태로 들고 MemberSearchCondition 검색을 DB 없이 처리한다. (member.search-index.enabled)
+ *
+ * - Snapshot : 나이순으로 정렬된 int[] ages 와 회원별 컬럼 배열. 나이 범위는 이진 탐색, 팀 조건은 팀별 BitSet, 회원명은 해시로 찾는다.
+ *              팀 이름은 팀 id 사전(teamNames)으로 분리해서 팀 이름이 바뀌어도 스냅샷은 그대로 쓴다.
+ * - Overlay  : 스냅샷 이후 커밋된 엔티티 변경(MemberSearchIndexListener). 스냅샷의 같은 회원보다 우선한다.
+ *              팀 이름 변경도 같은 순번(sequence)으로 남겨서 재생성할 때 읽기 시작한 뒤의 변경만 다시 적용한다.
+ *              일정 크기를 넘으면 스냅샷을 다시 만든다.
+ * - 벌크 연산은 엔티티 이벤트가 없으므로 beginBulk/endBulk 로 알려준다. 그 동안과 스냅샷 재생성 중에는 search 가 비어있는 값을 반환하고
+ *   호출하는 쪽은 DB 검색으로 대신한다.
+ * - 그 밖에 엔티티 이벤트 없이 member/team 을 바꾸는 SQL (다른 JPQL/Querydsl update, delete, native SQL) 은
+ *   검색 캐시와 같은 p6spy 감지(MemberSearchCacheInvalidator)로 onExternalWrite 가 불린다. 커밋 이후 스냅샷을 다시 만든다.
+ * - 스냅샷은 primary 에서 읽는다. (read-only 트랜잭션은 replica 로 가서 복제 지연만큼 오래된 값을 읽을 수 있다)
+ */
+@Slf4j
+@Component
+public class MemberSearchIndex implements DisposableBean {
+
+    private final boolean enabled;
+    private final int overlayLimit;
+    private final int fetchSize;
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "member-search-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger bulkInProgress = new AtomicInteger();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final AtomicLong invalidations = new AtomicLong(); //재생성 중에 무효화되면 그 스냅샷은 쓰지 않는다.
+    private volatile State state = State.notReady();
+
+    public MemberSearchIndex(JPAQueryFactory queryFactory,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${member.search-index.enabled:false}") boolean enabled,
+                             @Value("${member.search-index.overlay-limit:10000}") int overlayLimit,
+                             @Value("${member.export.fetch-size:1000}") int fetchSize) {
+        this.queryFactory = queryFactory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager); //read-only 로 하면 replica 로 간다.
+        this.enabled = enabled;
+        this.overlayLimit = overlayLimit;
+        this.fetchSize = fetchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (enabled) {
+            scheduleRebuild();
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && state.ready;
+    }
+
+    /**
+     * @return 준비되지 않았으면 empty. 호출하는 쪽에서 DB 검색으로 대신한다.
+     */
+    public Optional<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        State current = state;
+        if (!enabled || !current.ready) {
+            return Optional.empty();
+        }
+        Snapshot snapshot = current.snapshot;
+        Map<Long, String> teamNames = current.teamNames;
+        Set<Long> teamIds = condition.getTeamName() == null ? null : teamIdsByName(teamNames, condition.getTeamName());
+
+        List<MemberTeamDto> result = new ArrayList<>();
+        int from = condition.getAgeGoe() == null ? 0 : lowerBound(snapshot.ages, condition.getAgeGoe());
+        int to = condition.getAgeLoe() == null ? snapshot.size : lowerBound(snapshot.ages, condition.getAgeLoe() + 1);
+
+        if (condition.getUsername() != null) {
+            int[] rows = snapshot.rowsByUsername.getOrDefault(condition.getUsername(), new int[0]);
+            for (int row : rows) {
+                if (row >= from && row < to && (teamIds == null || teamIds.contains(snapshot.teamIds[row]))) {
+                    addRow(result, snapshot, row, current, teamNames);
+                }
+            }
+        } else if (teamIds != null) {
+            for (Long teamId : teamIds) {
+                BitSet rows = snapshot.rowsByTeam.get(teamId);
+                if (rows == null) {
+                    continue;
+                }
+                for (int row = rows.nextSetBit(from); row >= 0 && row < to; row = rows.nextSetBit(row + 1)) {
+                    addRow(result, snapshot, row, current, teamNames);
+                }
+            }
+        } else {
+            for (int row = from; row < to; row++) {
+                addRow(result, snapshot, row, current, teamNames);
+            }
+        }
+
+        for (Row row : current.overlay.values()) {
+            if (!row.deleted && row.matches(condition, teamIds)) {
+                result.add(row.toDto(teamNames));
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private static void addRow(List<MemberTeamDto> result, Snapshot snapshot, int row, State state, Map<Long, String> teamNames) {
+        long memberId = snapshot.memberIds[row];
+        if (state.overlay.containsKey(memberId)) {
+            return; //overlay 에 더 최신 값이 있다.
+        }
+        long teamId = snapshot.teamIds[row];
+        Long boxedTeamId = teamId == Snapshot.NO_TEAM ? null : teamId;
+        result.add(new MemberTeamDto(memberId, snapshot.usernames[row], snapshot.ages[row],
+                boxedTeamId, boxedTeamId == null ? null : teamNames.get(boxedTeamId)));
+    }
+
+    private static Set<Long> teamIdsByName(Map<Long, String> teamNames, String teamName) {
+        Set<Long> ids = new HashSet<>();
+        teamNames.forEach((id, name) -> {
+            if (teamName.equals(name)) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    // ===== 변경 반영 (커밋 이후) =====
+
+    public void onMemberSaved(Long memberId, String username, int age, Long teamId) {
+        afterCommit(() -> applyMember(new Row(memberId, username, age, teamId, false, sequence.incrementAndGet())));
+    }
+
+    public void onMemberRemoved(Long memberId) {
+        afterCommit(() -> applyMember(new Row(memberId, null, 0, null, true, sequence.incrementAndGet())));
+    }
+
+    public void onTeamSaved(Long teamId, String name) {
+        afterCommit(() -> applyTeam(teamId, new TeamRow(name, sequence.incrementAndGet())));
+    }
+
+    public void onTeamRemoved(Long teamId) {
+        afterCommit(() -> applyTeam(teamId, new TeamRow(null, sequence.incrementAndGet())));
+    }
+
+    /**
+     * 벌크 update/delete 시작. 끝날 때까지 검색은 DB 로 간다.
+     */
+    public void beginBulk() {
+        if (!enabled) {
+            return;
+        }
+        bulkInProgress.incrementAndGet();
+        synchronized (this) {
+            state = State.notReady();
+        }
+    }
+
+    /**
+     * 벌크 update/delete 종료. (커밋 이후 호출) 스냅샷을 다시 만든다.
+     */
+    public void endBulk() {
+        if (!enabled) {
+            return;
+        }
+        bulkInProgress.decrementAndGet();
+        scheduleRebuild();
+    }
+
+    /**
+     * 엔티티 이벤트로 알 수 없는 member/team 변경 (p6spy 로 감지). 커밋 이후 스냅샷을 버리고 다시 만든다.
+     * 한 트랜잭션 안의 여러 SQL 은 한번만 반영한다.
+     */
+    public void onExternalWrite() {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate();
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(MemberSearchIndex.this);
+            }
+        });
+    }
+
+    /**
+     * 인덱스 밖에서 member 가 바뀐 것을 발견했을 때 (ex. TeamStatsReconciler 의 집계 불일치) 스냅샷을 다시 만든다.
+     */
+    public void invalidate() {
+        if (!enabled) {
+            return;
+        }
+        invalidations.incrementAndGet();
+        synchronized (this) {
+            state = State.notReady(); //팀 이름도 SQL 로 바뀌었을 수 있으므로 DB 에서 다시 읽는다.
+        }
+        scheduleRebuild();
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private synchronized void applyMember(Row row) {
+        Map<Long, Row> overlay = new HashMap<>(state.overlay);
+        overlay.put(row.memberId, row);
+        state = state.with(overlay, state.teamNames, state.teamOverlay);
+        if (overlay.size() > overlayLimit) {
+            scheduleRebuild();
+        }
+    }
+
+    private synchronized void applyTeam(Long teamId, TeamRow row) {
+        Map<Long, String> teamNames = new HashMap<>(state.teamNames);
+        row.applyTo(teamNames, teamId);
+        Map<Long, TeamRow> teamOverlay = new HashMap<>(state.teamOverlay);
+        teamOverlay.put(teamId, row);
+        state = state.with(state.overlay, teamNames, teamOverlay);
+    }
+
+    // ===== 스냅샷 생성 =====
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            rebuildExecutor.execute(() -> {
+                rebuildScheduled.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.warn("member search index rebuild failed", e);
+                }
+            });
+        }
+    }
+
+    private void rebuild() {
+        long start = System.nanoTime();
+        long startSequence = sequence.get();
+        long startInvalidations = invalidations.get();
+
+        Map<Long, String> teamNames = new HashMap<>();
+        Snapshot snapshot = transactionTemplate.execute(status -> {
+            for (Tuple tuple : queryFactory.select(team.id, team.name).from(team).fetch()) {
+                teamNames.put(tuple.get(team.id), tuple.get(team.name));
+            }
+            Snapshot.Builder builder = new Snapshot.Builder();
+            try (Stream<MemberTeamDto> rows = queryFactory
+                    .select(new QMemberTeamDto(
+                            member.id.as("memberId"),
+                            member.username,
+                            member.age,
+                            team.id.as("teamId"),
+                            team.name.as("teamName")))
+                    .from(member)
+                    .leftJoin(member.team, team)
+                    .orderBy(member.age.asc(), member.id.asc())
+                    .setHint(QueryHints.FETCH_SIZE, fetchSize)
+                    .setHint(QueryHints.READ_ONLY, true)
+                    .stream()) {
+                rows.forEach(builder::add);
+            }
+            return builder.build();
+        });
+
+        synchronized (this) {
+            //읽기 시작한 뒤에 커밋된 변경만 남긴다. 그 전 변경은 스냅샷에 이미 들어있다.
+            Map<Long, Row> overlay = new HashMap<>();
+            state.overlay.forEach((id, row) -> {
+                if (row.sequence > startSequence) {
+                    overlay.put(id, row);
+                }
+            });
+            //팀 이름도 같은 기준. 그 전 이름으로 DB 에서 읽은 최신 이름을 덮어쓰지 않는다.
+            Map<Long, TeamRow> teamOverlay = new HashMap<>();
+            state.teamOverlay.forEach((id, row) -> {
+                if (row.sequence > startSequence) {
+                    row.applyTo(teamNames, id);
+                    teamOverlay.put(id, row);
+                }
+            });
+            //읽는 동안 무효화됐으면 다음 재생성(이미 예약됨)이 끝날 때까지 DB 로 검색한다.
+            boolean ready = bulkInProgress.get() == 0 && invalidations.get() == startInvalidations;
+            state = new State(snapshot, overlay, teamNames, teamOverlay, ready);
+        }
+        log.info("member search index built. rows={}, elapsed={}ms", snapshot.size, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    static int lowerBound(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static class State {
+        final Snapshot snapshot;
+        final Map<Long, Row> overlay;
+        final Map<Long, String> teamNames;
+        final Map<Long, TeamRow> teamOverlay; //스냅샷 이후 팀 이름 변경
+        final boolean ready;
+
+        State(Snapshot snapshot, Map<Long, Row> overlay, Map<Long, String> teamNames, Map<Long, TeamRow> teamOverlay,
+              boolean ready) {
+            this.snapshot = snapshot;
+            this.overlay = overlay;
+            this.teamNames = teamNames;
+            this.teamOverlay = teamOverlay;
+            this.ready = ready;
+        }
+
+        static State notReady() {
+            return new State(Snapshot.EMPTY, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), false);
+        }
+
+        State with(Map<Long, Row> overlay, Map<Long, String> teamNames, Map<Long, TeamRow> teamOverlay) {
+            return new State(snapshot, overlay, teamNames, teamOverlay, ready);
+        }
+    }
+
+    /**
+     * 나이, member_id 순으로 정렬된 컬럼들. 만든 뒤에는 바뀌지 않는다.
+     */
+    private static class Snapshot {
+        static final long NO_TEAM = -1;
+        static final Snapshot EMPTY = new Snapshot.Builder().build();
+
+        final int size;
+        final int[] ages;
+        final long[] memberIds;
+        final String[] usernames;
+        final long[] teamIds;
+        final Map<Long, BitSet> rowsByTeam;
+        final Map<String, int[]> rowsByUsername;
+
+        Snapshot(int size, int[] ages, long[] memberIds, String[] usernames, long[] teamIds,
+                 Map<Long, BitSet> rowsByTeam, Map<String, int[]> rowsByUsername) {
+            this.size = size;
+            this.ages = ages;
+            this.memberIds = memberIds;
+            this.usernames = usernames;
+            this.teamIds = teamIds;
+            this.rowsByTeam = rowsByTeam;
+            this.rowsByUsername = rowsByUsername;
+        }
+
+        static class Builder {
+            private int size;
+            private int[] ages = new int[1024];
+            private long[] memberIds = new long[1024];
+            private String[] usernames = new String[1024];
+            private long[] teamIds = new long[1024];
+            private final Map<Long, BitSet> rowsByTeam = new HashMap<>();
+            private final Map<String, List<Integer>> rowsByUsername = new HashMap<>();
+
+            //나이, member_id 순으로 넣어야 한다.
+            void add(MemberTeamDto dto) {
+                if (size == ages.length) {
+                    int capacity = size * 2;
+                    ages = Arrays.copyOf(ages, capacity);
+                    memberIds = Arrays.copyOf(memberIds, capacity);
+                    usernames = Arrays.copyOf(usernames, capacity);
+                    teamIds = Arrays.copyOf(teamIds, capacity);
+                }
+                ages[size] = dto.getAge();
+                memberIds[size] = dto.getMemberId();
+                usernames[size] = dto.getUsername();
+                teamIds[size] = dto.getTeamId() == null ? NO_TEAM : dto.getTeamId();
+                if (dto.getTeamId() != null) {
+                    rowsByTeam.computeIfAbsent(dto.getTeamId(), id -> new BitSet()).set(size);
+                }
+                if (dto.getUsername() != null) {
+                    rowsByUsername.computeIfAbsent(dto.getUsername(), name -> new ArrayList<>(1)).add(size);
+                }
+                size++;
+            }
+
+            Snapshot build() {
+                Map<String, int[]> usernameRows = new HashMap<>(rowsByUsername.size() * 2);
+                rowsByUsername.forEach((name, rows) -> usernameRows.put(name, rows.stream().mapToInt(Integer::intValue).toArray()));
+                return new Snapshot(size,
+                        Arrays.copyOf(ages, size),
+                        Arrays.copyOf(memberIds, size),
+                        Arrays.copyOf(usernames, size),
+                        Arrays.copyOf(teamIds, size),
+                        rowsByTeam,
+                        usernameRows);
+            }
+        }
+    }
+
+    /**
+     * 스냅샷 이후 변경된 회원 한명
+     */
+    private static class Row {
+        final Long memberId;
+        final String username;
+        final int age;
+        final Long teamId;
+        final boolean deleted;
+        final long sequence;
+
+        Row(Long memberId, String username, int age, Long teamId, boolean deleted, long sequence) {
+            this.memberId = memberId;
+            this.username = username;
+            this.age = age;
+            this.teamId = teamId;
+            this.deleted = deleted;
+            this.sequence = sequence;
+        }
+
+        boolean matches(MemberSearchCondition condition, Set<Long> teamIds) {
+            return (condition.getUsername() == null || condition.getUsername().equals(username))
+                    && (teamIds == null || (teamId != null && teamIds.contains(teamId)))
+                    && (condition.getAgeGoe() == null || age >= condition.getAgeGoe())
+                    && (condition.getAgeLoe() == null || age <= condition.getAgeLoe());
+        }
+
+        MemberTeamDto toDto(Map<Long, String> teamNames) {
+            return new MemberTeamDto(memberId, username, age, teamId, teamId == null ? null : teamNames.get(teamId));
+        }
+    }
+
+    /**
+     * 스냅샷 이후 팀 이름 변경 (name 이 null 이면 삭제)
+     */
+    private static class TeamRow {
+        final String name;
+        final long sequence;
+
+        TeamRow(String name, long sequence) {
+            this.name = name;
+            this.sequence = sequence;
+        }
+
+        void applyTo(Map<Long, String> teamNames, Long teamId) {
+            if (name == null) {
+                teamNames.remove(teamId);
+            } else {
+                teamNames.put(teamId, name);
+            }
+        }
+    }
+}
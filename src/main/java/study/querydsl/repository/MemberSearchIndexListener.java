@@ -0,0 +1,58 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+/**
+ * Member, Team 엔티티 변경을 MemberSearchIndex 에 전달한다. (반영은 커밋 이후)
+ * 하이버네이트가 SpringBeanContainer 로 생성한다. EntityManagerFactory 생성 중에 만들어지므로 인덱스는 지연 조회한다.
+ */
+public class MemberSearchIndexListener {
+
+    private final ObjectProvider<MemberSearchIndex> memberSearchIndex;
+
+    public MemberSearchIndexListener(ObjectProvider<MemberSearchIndex> memberSearchIndex) {
+        this.memberSearchIndex = memberSearchIndex;
+    }
+
+    //스프링 밖에서 생성되면 (샤드 EntityManagerFactory, MemberShards) 아무것도 하지 않는다. 인덱스는 기본 DataSource 기준
+    public MemberSearchIndexListener() {
+        this.memberSearchIndex = null;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void saved(Object entity) {
+        MemberSearchIndex index = memberSearchIndex == null ? null : memberSearchIndex.getIfAvailable();
+        if (index == null) {
+            return;
+        }
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            //프록시여도 getId 는 초기화하지 않는다.
+            Long teamId = member.getTeam() == null ? null : member.getTeam().getId();
+            index.onMemberSaved(member.getId(), member.getUsername(), member.getAge(), teamId);
+        } else if (entity instanceof Team) {
+            Team team = (Team) entity;
+            index.onTeamSaved(team.getId(), team.getName());
+        }
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        MemberSearchIndex index = memberSearchIndex == null ? null : memberSearchIndex.getIfAvailable();
+        if (index == null) {
+            return;
+        }
+        if (entity instanceof Member) {
+            index.onMemberRemoved(((Member) entity).getId());
+        } else if (entity instanceof Team) {
+            index.onTeamRemoved(((Team) entity).getId());
+        }
+    }
+}
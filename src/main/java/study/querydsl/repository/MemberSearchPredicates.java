@@ -0,0 +1,138 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.ConstantImpl;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ParamExpression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.dsl.BooleanExpression;
+import com.querydsl.core.types.dsl.Param;
+import com.querydsl.jpa.impl.JPAQuery;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * MemberSearchCondition -> where 조건 (null 인 조건은 빠진다)
+ * 검색, 페이징, count, export 가 모두 이 조건을 쓴다. teamName 조건은 team 조인이 필요하다. -> hasTeamCondition, joinTeam
+ * 값 대신 Param 을 넣은 같은 조건(withParams)은 shape 별로 한번만 JPQL 로 만들어 쓴다. -> MemberCompiledSearch
+ */
+final class MemberSearchPredicates {
+
+    //shape : 조건 4개의 null 여부 조합
+    static final int USERNAME = 1;
+    static final int TEAM_NAME = 1 << 1;
+    static final int AGE_GOE = 1 << 2;
+    static final int AGE_LOE = 1 << 3;
+    static final int SHAPE_COUNT = 1 << 4;
+
+    private static final Param<String> USERNAME_PARAM = new Param<>(String.class, "username");
+    private static final Param<String> TEAM_NAME_PARAM = new Param<>(String.class, "teamName");
+    private static final Param<Integer> AGE_GOE_PARAM = new Param<>(Integer.class, "ageGoe");
+    private static final Param<Integer> AGE_LOE_PARAM = new Param<>(Integer.class, "ageLoe");
+
+    private MemberSearchPredicates() {
+    }
+
+    static Predicate[] of(MemberSearchCondition condition) {
+        return predicates(
+                constant(condition.getUsername()),
+                constant(condition.getTeamName()),
+                constant(condition.getAgeGoe()),
+                constant(condition.getAgeLoe()));
+    }
+
+    /**
+     * of 와 같은 조건이지만 값 자리에 Param 이 들어간다. 값은 params 로 바인딩한다.
+     */
+    static Predicate[] withParams(MemberSearchCondition condition) {
+        return predicates(
+                condition.getUsername() == null ? null : USERNAME_PARAM,
+                condition.getTeamName() == null ? null : TEAM_NAME_PARAM,
+                condition.getAgeGoe() == null ? null : AGE_GOE_PARAM,
+                condition.getAgeLoe() == null ? null : AGE_LOE_PARAM);
+    }
+
+    static Map<ParamExpression<?>, Object> params(MemberSearchCondition condition) {
+        Map<ParamExpression<?>, Object> params = new HashMap<>();
+        if (condition.getUsername() != null) {
+            params.put(USERNAME_PARAM, condition.getUsername());
+        }
+        if (condition.getTeamName() != null) {
+            params.put(TEAM_NAME_PARAM, condition.getTeamName());
+        }
+        if (condition.getAgeGoe() != null) {
+            params.put(AGE_GOE_PARAM, condition.getAgeGoe());
+        }
+        if (condition.getAgeLoe() != null) {
+            params.put(AGE_LOE_PARAM, condition.getAgeLoe());
+        }
+        return params;
+    }
+
+    static int shapeOf(MemberSearchCondition condition) {
+        int shape = 0;
+        if (condition.getUsername() != null) {
+            shape |= USERNAME;
+        }
+        if (condition.getTeamName() != null) {
+            shape |= TEAM_NAME;
+        }
+        if (condition.getAgeGoe() != null) {
+            shape |= AGE_GOE;
+        }
+        if (condition.getAgeLoe() != null) {
+            shape |= AGE_LOE;
+        }
+        return shape;
+    }
+
+    static boolean hasTeamCondition(MemberSearchCondition condition) {
+        return condition.getTeamName() != null;
+    }
+
+    /**
+     * team 컬럼을 같이 조회하는 검색용 조인.
+     * teamName 조건이 있으면 팀 없는 회원은 어차피 걸러지므로 inner join 으로 바꿔서
+     * 옵티마이저가 team(idx_team_name) 부터 읽을 수 있게 한다. 없으면 팀 없는 회원도 나오도록 left join.
+     */
+    static <T> JPAQuery<T> joinTeam(JPAQuery<T> query, MemberSearchCondition condition) {
+        return hasTeamCondition(condition)
+                ? query.join(member.team, team)
+                : query.leftJoin(member.team, team);
+    }
+
+    private static Predicate[] predicates(Expression<String> username, Expression<String> teamName,
+                                          Expression<Integer> ageGoe, Expression<Integer> ageLoe) {
+        return new Predicate[]{
+                usernameEq(username),
+                teamNameEq(teamName),
+                ageGoe(ageGoe),
+                ageLoe(ageLoe)
+        };
+    }
+
+    private static BooleanExpression usernameEq(Expression<String> username) {
+        return username == null ? null : member.username.eq(username);
+    }
+
+    private static BooleanExpression teamNameEq(Expression<String> teamName) {
+        return teamName == null ? null : team.name.eq(teamName);
+    }
+
+    private static BooleanExpression ageGoe(Expression<Integer> ageGoe) {
+        return ageGoe == null ? null : member.age.goe(ageGoe);
+    }
+
+    private static BooleanExpression ageLoe(Expression<Integer> ageLoe) {
+        return ageLoe == null ? null : member.age.loe(ageLoe);
+    }
+
+    //eq(값) 과 같은 표현식 (null 이면 조건이 빠진다)
+    private static <T> Expression<T> constant(T value) {
+        return value == null ? null : ConstantImpl.create(value);
+    }
+}
@@ -0,0 +1,30 @@
+package study.querydsl.repository;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "member.shard")
+public class MemberShardProperties {
+
+    private boolean enabled = false; //true 면 MemberRepositoryImpl 검색을 샤드 전체에 scatter-gather
+    private List<Shard> shards = new ArrayList<>(); //샤드 번호는 목록 순서. 기동 후에는 바꾸면 안 된다. (team_id % 샤드 수)
+    private String ddlAuto = "none"; //샤드 스키마 (hibernate.hbm2ddl.auto)
+    private int queueCapacity = 100; //scatter 대기열. 가득 차면 호출 스레드에서 실행
+    private long maxOffset = 10_000; //offset 페이징 최대 offset. 샤드마다 offset + size 개를 읽으므로 더 뒤는 cursor(/v4) 로
+
+    @Getter
+    @Setter
+    public static class Shard {
+        private String url;
+        private String username;
+        private String password;
+    }
+}
@@ -0,0 +1,31 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PrePersist;
+
+/**
+ * 샤드 모드에서 기본 EntityManager 로 Member, Team 을 저장하면 거절한다. 샤드 저장은 MemberShards.saveTeam, saveMember
+ * 하이버네이트가 SpringBeanContainer 로 생성한다. EntityManagerFactory 생성 중에 만들어지므로 MemberShards 는 지연 조회한다.
+ */
+public class MemberShardWriteGuard {
+
+    private final ObjectProvider<MemberShards> memberShards;
+
+    public MemberShardWriteGuard(ObjectProvider<MemberShards> memberShards) {
+        this.memberShards = memberShards;
+    }
+
+    //스프링 밖에서 생성되면 (샤드 EntityManagerFactory) 아무것도 하지 않는다.
+    public MemberShardWriteGuard() {
+        this.memberShards = null;
+    }
+
+    @PrePersist
+    public void persisting(Object entity) {
+        MemberShards shards = memberShards == null ? null : memberShards.getIfAvailable();
+        if (shards != null) {
+            shards.requireUnsharded("기본 DataSource 에 " + entity.getClass().getSimpleName() + " 저장");
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package study.querydsl.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.Session;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.core.env.Environment;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.entity.ConfigurableSequenceGenerator;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * team_id 로 나눈 N 개의 member/team 샤드 (member.shard.enabled)
+ * - 샤드마다 DataSource, EntityManagerFactory 를 따로 둔다. 스키마는 모두 같다.
+ * - team 은 id % N 번 샤드에, member 는 소속 team 의 샤드에 저장한다. team 이 없는 member 는 0번 샤드
+ *   id = 샤드 시퀀스 값 * N + 샤드 번호 (ConfigurableSequenceGenerator) 라서 샤드끼리 겹치지 않고 id 만으로 샤드를 알 수 있다.
+ * - scatter: 모든 샤드에 같은 쿼리를 병렬로 실행한다. 각 쿼리는 샤드 전용 read-only EntityManager 에서 실행된다.
+ * - merge: 같은 순서로 정렬된 샤드별 결과를 k-way merge 해서 전체 순서의 offset ~ offset + limit 구간을 만든다.
+ * - 샤드 쓰기는 p6spy 를 거치지 않으므로 검색 캐시, 동일 검색 합치기는 여기서 직접 끊는다.
+ * 기본 DataSource 의 member, team 과는 별개의 데이터다. (2차 캐시, MemberSearchIndex 도 쓰지 않는다)
+ * 샤드 모드에서 기본 DataSource 의 member/team 을 쓰는 기능은
+ * - 기동 옵션(member.search-index, member.bulk-load, member.team-stats.reconcile)은 켜져 있으면 기동에 실패한다.
+ * - 호출되는 기능(벌크 update/delete, 기본 EntityManager 로의 저장)은 requireUnsharded 로 거절한다.
+ * - 검색, export, 팀 통계는 샤드에서 읽는다.
+ */
+@Component
+public class MemberShards implements DisposableBean {
+
+    private final boolean enabled;
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<EntityManagerFactory> shards = new ArrayList<>();
+    private final ThreadPoolExecutor executor;
+    private final MemberSearchCache searchCache;
+    private final MemberSearchCoalescer searchCoalescer;
+    private final AtomicInteger nextTeamShard = new AtomicInteger();
+    private final long maxOffset;
+
+    //샤드 모드에서 켤 수 없는 기능 (모두 기본 DataSource 의 member/team 을 읽거나 쓴다)
+    static final List<String> UNSHARDED_FEATURES = List.of(
+            "member.search-index.enabled",
+            "member.bulk-load.enabled",
+            "member.team-stats.reconcile.enabled");
+
+    public MemberShards(MemberShardProperties properties,
+                        EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+                        MemberSearchCache searchCache,
+                        MemberSearchCoalescer searchCoalescer,
+                        Environment environment) {
+        this.enabled = properties.isEnabled();
+        this.searchCache = searchCache;
+        this.searchCoalescer = searchCoalescer;
+        this.maxOffset = properties.getMaxOffset();
+        if (enabled) {
+            List<String> conflicts = new ArrayList<>();
+            for (String feature : UNSHARDED_FEATURES) {
+                //team-stats.reconcile 은 기본값이 true 다.
+                boolean defaultValue = feature.startsWith("member.team-stats");
+                if (environment.getProperty(feature, Boolean.class, defaultValue)) {
+                    conflicts.add(feature);
+                }
+            }
+            if (!conflicts.isEmpty()) {
+                throw new IllegalStateException("member.shard.enabled=true 에서는 기본 DataSource 를 쓰는 기능을 끄세요: " + conflicts);
+            }
+            List<MemberShardProperties.Shard> shardList = properties.getShards();
+            if (shardList.isEmpty()) {
+                throw new IllegalStateException("member.shard.shards 가 비어 있습니다.");
+            }
+            for (int i = 0; i < shardList.size(); i++) {
+                HikariDataSource dataSource = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .url(shardList.get(i).getUrl())
+                        .username(shardList.get(i).getUsername())
+                        .password(shardList.get(i).getPassword())
+                        .build();
+                dataSource.setPoolName("shard-" + i);
+                dataSources.add(dataSource);
+                shards.add(entityManagerFactory(entityManagerFactoryBuilder, dataSource, properties, i));
+            }
+        }
+        int poolSize = Math.max(shards.size(), 1);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static EntityManagerFactory entityManagerFactory(EntityManagerFactoryBuilder builder, HikariDataSource dataSource,
+                                                             MemberShardProperties properties, int index) {
+        Map<String, Object> jpaProperties = new HashMap<>();
+        jpaProperties.put("hibernate.hbm2ddl.auto", properties.getDdlAuto());
+        jpaProperties.put("hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy");
+        jpaProperties.put("hibernate.implicit_naming_strategy", "org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy");
+        jpaProperties.put("hibernate.cache.use_second_level_cache", false); //샤드끼리 region 이 섞이지 않도록
+        jpaProperties.put("hibernate.cache.use_query_cache", false);
+        jpaProperties.put("hibernate.cache.region.factory_class", "org.hibernate.cache.internal.NoCachingRegionFactory");
+        jpaProperties.put(ConfigurableSequenceGenerator.SHARD_COUNT, properties.getShards().size());
+        jpaProperties.put(ConfigurableSequenceGenerator.SHARD_INDEX, index);
+
+        LocalContainerEntityManagerFactoryBean factory = builder
+                .dataSource(dataSource)
+                .packages(Member.class)
+                .persistenceUnit("shard-" + index)
+                .properties(jpaProperties)
+                .build();
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * 샤드 모드에서 기본 DataSource 의 member/team 을 쓰는 기능을 호출하면 거절한다.
+     */
+    public void requireUnsharded(String feature) {
+        if (enabled) {
+            throw new IllegalStateException("샤드 모드에서는 " + feature + " 를 쓸 수 없습니다. (member.shard.enabled=true)");
+        }
+    }
+
+    /**
+     * 샤드마다 offset + limit 개를 읽어서 합치므로 offset 을 제한한다.
+     */
+    public void checkOffset(long offset) {
+        if (offset > maxOffset) {
+            throw new InvalidSearchRequestException("샤드 검색의 offset 은 " + maxOffset + " 까지입니다. 더 뒤의 결과는 cursor 페이징(/v4/members)을 쓰세요: " + offset);
+        }
+    }
+
+    public int shardOf(Long teamId) {
+        return teamId == null ? 0 : Math.floorMod(teamId, shards.size());
+    }
+
+    /**
+     * 모든 샤드에서 query 를 병렬로 실행한다. 결과는 샤드 번호 순서
+     */
+    public <T> List<T> scatter(Function<EntityManager, T> query) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (EntityManagerFactory shard : shards) {
+            futures.add(executor.submit(() -> inReadOnlyEntityManager(shard, query)));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    /**
+     * 샤드마다 차례로 (호출 스레드에서) read-only EntityManager 로 action 을 실행한다.
+     * 결과를 모으지 않고 바로 내보내는 스트리밍 조회용
+     */
+    public void forEach(Consumer<EntityManager> action) {
+        for (EntityManagerFactory shard : shards) {
+            inReadOnlyEntityManager(shard, em -> {
+                action.accept(em);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 같은 순서로 정렬된 샤드별 결과를 합쳐서 전체 순서의 offset 부터 limit 개를 만든다. (k-way merge)
+     * 각 샤드 결과는 앞에서부터 최소 offset + limit 개를 갖고 있어야 한다.
+     */
+    static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> comparator, long offset, int limit) {
+        //{샤드 번호, 샤드 결과 안의 위치}
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(sorted.size(), 1),
+                (a, b) -> comparator.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1])));
+        for (int shard = 0; shard < sorted.size(); shard++) {
+            if (!sorted.get(shard).isEmpty()) {
+                heads.add(new int[]{shard, 0});
+            }
+        }
+
+        List<T> result = new ArrayList<>();
+        long skipped = 0;
+        while (!heads.isEmpty() && result.size() < limit) {
+            int[] head = heads.poll();
+            T row = sorted.get(head[0]).get(head[1]);
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(row);
+            }
+            if (++head[1] < sorted.get(head[0]).size()) {
+                heads.add(head);
+            }
+        }
+        return result;
+    }
+
+    public Team saveTeam(String name) {
+        int shard = Math.floorMod(nextTeamShard.getAndIncrement(), shards.size());
+        return write(shard, em -> {
+            Team team = new Team(name);
+            em.persist(team);
+            return team;
+        });
+    }
+
+    public Member saveMember(String username, int age, Long teamId) {
+        return write(shardOf(teamId), em -> {
+            Member member = new Member(username, age, teamId == null ? null : em.getReference(Team.class, teamId));
+            em.persist(member);
+            return member;
+        });
+    }
+
+    private <R> R write(int shard, Function<EntityManager, R> work) {
+        EntityManager em = shards.get(shard).createEntityManager();
+        try {
+            em.getTransaction().begin();
+            R result = work.apply(em);
+            em.getTransaction().commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+            searchCache.onWrite();
+            searchCoalescer.onWrite();
+        }
+    }
+
+    private static <R> R inReadOnlyEntityManager(EntityManagerFactory shard, Function<EntityManager, R> query) {
+        EntityManager em = shard.createEntityManager();
+        try {
+            em.unwrap(Session.class).setDefaultReadOnly(true);
+            em.getTransaction().begin();
+            try {
+                return query.apply(em);
+            } finally {
+                em.getTransaction().rollback();
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("샤드 조회 대기 중 인터럽트", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("샤드 조회 실패", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        shards.forEach(EntityManagerFactory::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,102 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import org.springframework.data.domain.Sort;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * Pageable 의 Sort -> Querydsl OrderSpecifier
+ * 인덱스 순서 그대로 읽을 수 있는 정렬만 허용한다. (수백만 건 filesort 방지)
+ * - 정렬 속성은 INDEXED 중 하나의 앞부분과 같아야 한다. ex) age / age,memberId / teamId,age
+ * - 방향은 모두 같아야 한다. (인덱스를 한 방향으로 읽을 수 있도록)
+ * - 마지막에 member_id 를 같은 방향으로 붙여서 같은 값끼리의 순서도 고정한다.
+ * 속성 이름은 응답(MemberTeamDto) 필드 이름을 쓴다. 허용되지 않는 정렬은 InvalidSearchRequestException
+ */
+final class MemberSort {
+
+    private static final Map<String, ComparableExpressionBase<?>> PATHS = Map.of(
+            "memberId", member.id,
+            "username", member.username,
+            "age", member.age,
+            "teamId", member.team.id); //member 의 FK 컬럼이라 조인하지 않는다.
+
+    @SuppressWarnings("rawtypes")
+    private static final Map<String, Function<MemberTeamDto, Comparable>> VALUES = Map.of(
+            "memberId", MemberTeamDto::getMemberId,
+            "username", MemberTeamDto::getUsername,
+            "age", MemberTeamDto::getAge,
+            "teamId", MemberTeamDto::getTeamId);
+
+    //인덱스 컬럼 순서. H2 보조 인덱스는 끝에 PK(member_id)를 갖고 있다.
+    private static final List<List<String>> INDEXED = List.of(
+            List.of("memberId"), //PK
+            List.of("username", "memberId"), //idx_member_username
+            List.of("age", "memberId"), //idx_member_age_id
+            List.of("teamId", "age", "memberId")); //idx_member_team_age
+
+    private MemberSort() {
+    }
+
+    static OrderSpecifier<?>[] orderBy(Sort sort) {
+        List<OrderSpecifier<?>> orderBy = new ArrayList<>();
+        for (Sort.Order order : normalize(sort)) {
+            ComparableExpressionBase<?> path = PATHS.get(order.getProperty());
+            orderBy.add(order.isAscending() ? path.asc() : path.desc());
+        }
+        return orderBy.toArray(new OrderSpecifier<?>[0]);
+    }
+
+    /**
+     * orderBy 와 같은 순서의 Comparator (샤드별 결과 병합용 -> MemberShards)
+     * null 은 H2 기본과 같이 가장 작은 값으로 본다. (asc 면 앞, desc 면 뒤)
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static Comparator<MemberTeamDto> comparator(Sort sort) {
+        Comparator<MemberTeamDto> comparator = (a, b) -> 0;
+        for (Sort.Order order : normalize(sort)) {
+            Function<MemberTeamDto, Comparable> value = VALUES.get(order.getProperty());
+            Comparator<MemberTeamDto> byProperty = (a, b) -> compareNullsFirst(value.apply(a), value.apply(b));
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareNullsFirst(Comparable a, Comparable b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    //허용된 정렬인지 확인하고 끝에 member_id 를 붙인다.
+    private static Sort normalize(Sort sort) {
+        List<String> properties = new ArrayList<>();
+        Sort.Direction direction = Sort.Direction.ASC;
+        for (Sort.Order order : sort) {
+            if (!properties.isEmpty() && order.getDirection() != direction) {
+                throw new InvalidSearchRequestException("정렬 방향은 모두 같아야 합니다: " + sort);
+            }
+            properties.add(order.getProperty());
+            direction = order.getDirection();
+        }
+        if (INDEXED.stream().noneMatch(index -> index.size() >= properties.size()
+                && index.subList(0, properties.size()).equals(properties))) {
+            throw new InvalidSearchRequestException("인덱스로 정렬할 수 없는 조건입니다: " + sort + " (허용: " + INDEXED + ")");
+        }
+        if (properties.isEmpty() || !properties.get(properties.size() - 1).equals("memberId")) {
+            properties.add("memberId");
+        }
+        return Sort.by(direction, properties.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,20 @@
+package study.querydsl.repository;
+
+/**
+ * 페이징 content 조회 방식
+ */
+public enum PageStrategy {
+
+    /**
+     * offset 만큼 건너뛰면서 member, team 전체 컬럼을 읽는다.
+     */
+    OFFSET,
+
+    /**
+     * deferred join
+     * 1. member_id 만 offset 페이징 (인덱스만 읽고, team 은 조건이 있을 때만 조인)
+     * 2. 그 id 들에 대해서만 team 조인 + MemberTeamDto 프로젝션
+     * 건너뛰는 row 들은 id 만 읽으므로 깊은 페이지일수록 유리하다.
+     */
+    DEFERRED_JOIN
+}
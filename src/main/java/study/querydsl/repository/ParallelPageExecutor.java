@@ -0,0 +1,144 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.metrics.SqlStatementBudget;
+import study.querydsl.metrics.SqlStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 페이징의 content 쿼리와 count 쿼리를 동시에 실행한다.
+ * - content 는 호출 스레드에서 호출한 트랜잭션의 EntityManager 로 실행한다.
+ * - count 만 크기가 제한된 executor 스레드에서 read-only 트랜잭션(TransactionTemplate)으로 먼저 시작한다.
+ *   요청 하나가 쓰는 커넥션은 최대 2개다. count 에는 호출한 트랜잭션의 커밋 안된 데이터가 보이지 않는다.
+ * - count 스레드에서 실행된 SQL 도 호출 스레드의 SqlStatementBudget 예산과 SqlStatementCounter 집계(member.search 태그)에 들어간다.
+ * - executor 가 가득 차면 count 도 호출한 트랜잭션에서 content 다음에 실행한다. (기존처럼 순차 실행)
+ * - datasource.routing 을 쓰면 항상 순차 실행한다. (content 와 count 가 서로 다른 노드(primary, replica)를 읽지 않도록)
+ * - PageableExecutionUtils 가 count 가 필요없다고 판단하면 (마지막 페이지) 아직 시작 안한 count 는 취소한다.
+ * - content, count 각각의 실행시간을 member.search.parallel 타이머로 남긴다. (query=content|count)
+ */
+@Component
+public class ParallelPageExecutor implements DisposableBean {
+
+    private final EntityManager em; //스레드의 트랜잭션에 묶인 EntityManager (공유 프록시)
+    private final TransactionTemplate readOnly;
+    private final SqlStatementBudget sqlStatementBudget;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final ThreadPoolExecutor executor;
+
+    public ParallelPageExecutor(EntityManager em,
+                                PlatformTransactionManager transactionManager,
+                                SqlStatementBudget sqlStatementBudget,
+                                MeterRegistry registry,
+                                @Value("${member.search.parallel-count.enabled:false}") boolean enabled,
+                                @Value("${datasource.routing.enabled:false}") boolean routing,
+                                @Value("${member.search.parallel-count.pool-size:4}") int poolSize,
+                                @Value("${member.search.parallel-count.queue-capacity:100}") int queueCapacity) {
+        this.em = em;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.sqlStatementBudget = sqlStatementBudget;
+        this.registry = registry;
+        this.enabled = enabled && !routing;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public <T> Page<T> getPage(Pageable pageable,
+                               Function<EntityManager, List<T>> contentQuery,
+                               Function<EntityManager, Long> countQuery) {
+        AtomicBoolean countNeeded = new AtomicBoolean(false);
+        Future<CountResult> countFuture = submitCount(countQuery);
+
+        List<T> content = timed("content", () -> contentQuery.apply(em));
+
+        Page<T> page = PageableExecutionUtils.getPage(content, pageable, () -> {
+            countNeeded.set(true);
+            if (countFuture == null) {
+                return timed("count", () -> countQuery.apply(em));
+            }
+            CountResult result = await(countFuture);
+            SqlStatementCounter.add(result.statements);
+            return result.count;
+        });
+        if (!countNeeded.get() && countFuture != null) {
+            countFuture.cancel(false);
+        }
+        return page;
+    }
+
+    /**
+     * executor 가 가득 차서 받아주지 않으면 null -> 호출한 트랜잭션에서 실행
+     * 호출 스레드의 SQL 예산을 count 스레드에서 이어서 쓰고, count 스레드에서 센 SQL 수를 결과와 함께 돌려준다.
+     */
+    private Future<CountResult> submitCount(Function<EntityManager, Long> countQuery) {
+        SqlStatementBudget.Scope scope = sqlStatementBudget.current();
+        try {
+            return executor.submit(() -> sqlStatementBudget.runIn(scope, () -> {
+                SqlStatementCounter.Counts before = SqlStatementCounter.snapshot();
+                Long count = timed("count", () -> readOnly.execute(status -> countQuery.apply(em)));
+                return new CountResult(count, SqlStatementCounter.since(before));
+            }));
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    private <R> R timed(String name, Supplier<R> query) {
+        return Timer.builder("member.search.parallel")
+                .tag("query", name)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(query);
+    }
+
+    //SqlBudgetExceededException 같은 런타임 예외는 호출 스레드에서 실행한 것처럼 그대로 던진다.
+    private static CountResult await(Future<CountResult> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("count 쿼리 대기 중 인터럽트", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("count 쿼리 실패", e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private static class CountResult {
+        private final long count;
+        private final SqlStatementCounter.Counts statements;
+
+        CountResult(long count, SqlStatementCounter.Counts statements) {
+            this.count = count;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.ObjectProvider;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.Objects;
+
+/**
+ * Member, Team 엔티티 변경을 TeamStatsRepository 에 증감으로 전달한다. (반영은 커밋 직전)
+ * 변경 전 값은 Member 가 로딩/저장 시점에 들고 있는 persistedTeamId, persistedAge 를 쓴다.
+ */
+public class TeamStatsListener {
+
+    private final ObjectProvider<TeamStatsRepository> teamStatsRepository;
+
+    public TeamStatsListener(ObjectProvider<TeamStatsRepository> teamStatsRepository) {
+        this.teamStatsRepository = teamStatsRepository;
+    }
+
+    //스프링 밖에서 생성되면 (샤드 EntityManagerFactory) 아무것도 하지 않는다. 집계는 기본 DataSource 기준
+    public TeamStatsListener() {
+        this.teamStatsRepository = null;
+    }
+
+    @PostPersist
+    public void persisted(Object entity) {
+        TeamStatsRepository repository = repository();
+        if (repository == null) {
+            return;
+        }
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            repository.onMemberAdded(teamId(member), member.getAge());
+        } else if (entity instanceof Team) {
+            repository.onTeamAdded(((Team) entity).getId());
+        }
+    }
+
+    @PostUpdate
+    public void updated(Object entity) {
+        TeamStatsRepository repository = repository();
+        if (repository == null || !(entity instanceof Member)) {
+            return;
+        }
+        Member member = (Member) entity;
+        Long teamId = teamId(member);
+        if (Objects.equals(member.getPersistedTeamId(), teamId) && member.getPersistedAge() == member.getAge()) {
+            return; //팀, 나이 외의 변경
+        }
+        //changeTeam, 나이 변경 모두 예전 값을 빼고 새 값을 더한다.
+        repository.onMemberRemoved(member.getPersistedTeamId(), member.getPersistedAge());
+        repository.onMemberAdded(teamId, member.getAge());
+    }
+
+    @PostRemove
+    public void removed(Object entity) {
+        TeamStatsRepository repository = repository();
+        if (repository == null) {
+            return;
+        }
+        if (entity instanceof Member) {
+            Member member = (Member) entity;
+            repository.onMemberRemoved(member.getPersistedTeamId(), member.getPersistedAge());
+        } else if (entity instanceof Team) {
+            repository.onTeamRemoved(((Team) entity).getId());
+        }
+    }
+
+    private TeamStatsRepository repository() {
+        return teamStatsRepository == null ? null : teamStatsRepository.getIfAvailable();
+    }
+
+    //프록시여도 getId 는 초기화하지 않는다.
+    private static Long teamId(Member member) {
+        return member.getTeam() == null ? null : member.getTeam().getId();
+    }
+}
@@ -0,0 +1,393 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.NumberExpression;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.TeamStatsDto;
+
+import javax.persistence.EntityManager;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.entity.QTeamStats.teamStats;
+
+/**
+ * team_stats 집계 테이블 관리
+ * - 엔티티 변경(TeamStatsListener)은 트랜잭션 안에서 팀별 증감으로 모아두었다가 커밋 직전에 팀마다 update 한번으로 반영한다.
+ *   (flush 중에는 JDBC batch 로 밀려있는 insert/delete 가 아직 실행되지 않았을 수 있어서 그 자리에서 반영하지 않는다)
+ * - 회원 수, 나이 합계, 최소/최대 나이는 더하기만 하면 되지만, 최소/최대 나이였던 회원이 빠지면 stale 로 표시하고
+ *   조회할 때 (team_id, age) 인덱스로 그 팀만 다시 구한다. reconcile 이 stale 을 정리한다.
+ * - 벌크 연산처럼 엔티티 이벤트가 없는 변경은 member_id 범위의 변경 전후 팀별 집계 차이를 같은 방식으로 반영하고 (applyRangeDelta)
+ *   최소/최대 나이였던 회원이 빠졌을 수 있는 팀만 마지막에 recomputeStale 로 다시 집계한다.
+ * - 갱신은 JDBC 로 한다. 같은 트랜잭션 커넥션을 쓰고, JPQL 벌크 연산과 달리 flush 를 일으키지 않는다.
+ * - team_stats 는 기본 DataSource 에만 유지한다. 샤드 모드의 findAll 은 샤드마다 member 를 group by 한다. (팀은 한 샤드에만 있다)
+ */
+@Repository
+public class TeamStatsRepository {
+
+    private static final String APPLY_DELTA =
+            "update team_stats set"
+                    + " member_count = member_count + :count,"
+                    + " age_sum = age_sum + :ageSum,"
+                    + " stale = (stale or coalesce(min_age >= cast(:removedMin as int), false)"
+                    + " or coalesce(max_age <= cast(:removedMax as int), false)),"
+                    + " min_age = least(coalesce(min_age, cast(:addedMin as int)), coalesce(cast(:addedMin as int), min_age)),"
+                    + " max_age = greatest(coalesce(max_age, cast(:addedMax as int)), coalesce(cast(:addedMax as int), max_age))"
+                    + " where team_id = :teamId";
+
+    private static final String RECOMPUTE =
+            "merge into team_stats s"
+                    + " using (select t.team_id, count(m.member_id) member_count, coalesce(sum(m.age), 0) age_sum,"
+                    + " min(m.age) min_age, max(m.age) max_age"
+                    + " from team t left join member m on m.team_id = t.team_id"
+                    + " where t.team_id in (:teamIds) group by t.team_id) a"
+                    + " on s.team_id = a.team_id"
+                    + " when matched then update set member_count = a.member_count, age_sum = a.age_sum,"
+                    + " min_age = a.min_age, max_age = a.max_age, stale = false"
+                    + " when not matched then insert (team_id, member_count, age_sum, min_age, max_age, stale)"
+                    + " values (a.team_id, a.member_count, a.age_sum, a.min_age, a.max_age, false)";
+
+    private static final String RANGE_STATS =
+            "select team_id, count(*) member_count, coalesce(sum(age), 0) age_sum, min(age) min_age, max(age) max_age"
+                    + " from member where member_id between :fromId and :toId and team_id is not null group by team_id";
+
+    //member 전체 group by 결과와 다르거나 stale 인 팀, 삭제된 팀
+    private static final String DRIFTED_TEAM_IDS =
+            "select t.team_id from team t"
+                    + " left join (select team_id, count(*) member_count, sum(age) age_sum, min(age) min_age, max(age) max_age"
+                    + " from member where team_id is not null group by team_id) a on a.team_id = t.team_id"
+                    + " left join team_stats s on s.team_id = t.team_id"
+                    + " where s.team_id is null or s.stale"
+                    + " or s.member_count <> coalesce(a.member_count, 0) or s.age_sum <> coalesce(a.age_sum, 0)"
+                    + " or s.min_age is distinct from a.min_age or s.max_age is distinct from a.max_age"
+                    + " union"
+                    + " select s.team_id from team_stats s where not exists (select 1 from team t where t.team_id = s.team_id)";
+
+    private final EntityManager em;
+    private final JPAQueryFactory queryFactory;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final MemberShards shards;
+
+    public TeamStatsRepository(EntityManager em, JPAQueryFactory queryFactory, NamedParameterJdbcTemplate jdbcTemplate,
+                               MemberShards shards) {
+        this.em = em;
+        this.queryFactory = queryFactory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shards = shards;
+    }
+
+    /**
+     * 팀 이름순. 평균 나이는 ageSum / memberCount
+     */
+    @Transactional(readOnly = true)
+    public List<TeamStatsDto> findAll() {
+        if (shards.isEnabled()) {
+            return findAllFromShards();
+        }
+        flushPending();
+        List<Tuple> rows = queryFactory
+                .select(team.id, team.name, teamStats.memberCount, teamStats.ageSum,
+                        teamStats.minAge, teamStats.maxAge, teamStats.stale)
+                .from(teamStats)
+                .join(team).on(team.id.eq(teamStats.teamId))
+                .orderBy(team.name.asc(), team.id.asc())
+                .fetch();
+
+        List<Long> staleTeamIds = rows.stream()
+                .filter(row -> Boolean.TRUE.equals(row.get(teamStats.stale)))
+                .map(row -> row.get(team.id))
+                .collect(Collectors.toList());
+        Map<Long, Tuple> ageRanges = staleTeamIds.isEmpty() ? Collections.emptyMap() : ageRanges(staleTeamIds);
+
+        List<TeamStatsDto> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            Long teamId = row.get(team.id);
+            Integer minAge = row.get(teamStats.minAge);
+            Integer maxAge = row.get(teamStats.maxAge);
+            if (Boolean.TRUE.equals(row.get(teamStats.stale))) {
+                Tuple range = ageRanges.get(teamId);
+                minAge = range == null ? null : range.get(member.age.min());
+                maxAge = range == null ? null : range.get(member.age.max());
+            }
+            result.add(new TeamStatsDto(teamId, row.get(team.name), row.get(teamStats.memberCount),
+                    row.get(teamStats.ageSum), minAge, maxAge));
+        }
+        return result;
+    }
+
+    private List<TeamStatsDto> findAllFromShards() {
+        NumberExpression<Long> memberCount = member.id.count();
+        NumberExpression<Long> ageSum = Expressions.numberTemplate(Long.class, "sum({0})", member.age); //JPQL sum(int) 은 Long
+        NumberExpression<Integer> minAge = member.age.min();
+        NumberExpression<Integer> maxAge = member.age.max();
+        return shards.scatter(em -> new JPAQueryFactory(em)
+                        .select(team.id, team.name, memberCount, ageSum, minAge, maxAge)
+                        .from(team)
+                        .leftJoin(member).on(member.team.eq(team))
+                        .groupBy(team.id, team.name)
+                        .fetch())
+                .stream()
+                .flatMap(List::stream)
+                .map(row -> {
+                    Long sum = row.get(ageSum);
+                    return new TeamStatsDto(row.get(team.id), row.get(team.name), row.get(memberCount),
+                            sum == null ? 0 : sum, row.get(minAge), row.get(maxAge));
+                })
+                .sorted(Comparator.comparing(TeamStatsDto::getTeamName).thenComparing(TeamStatsDto::getTeamId))
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, Tuple> ageRanges(List<Long> teamIds) {
+        return queryFactory
+                .select(member.team.id, member.age.min(), member.age.max())
+                .from(member)
+                .where(member.team.id.in(teamIds))
+                .groupBy(member.team.id)
+                .fetch().stream()
+                .collect(Collectors.toMap(row -> row.get(member.team.id), row -> row));
+    }
+
+    /**
+     * 해당 팀들을 member 에서 다시 집계해서 덮어쓴다. 없어진 팀의 집계는 지운다.
+     */
+    @Transactional
+    public void recompute(Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("teamIds", teamIds);
+        jdbcTemplate.update(RECOMPUTE, params);
+        jdbcTemplate.update("delete from team_stats where team_id in (:teamIds)"
+                + " and not exists (select 1 from team t where t.team_id = team_stats.team_id)", params);
+    }
+
+    /**
+     * 해당 팀들 중 stale 인 팀만 다시 집계한다.
+     */
+    @Transactional
+    public void recomputeStale(Collection<Long> teamIds) {
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        recompute(jdbcTemplate.queryForList("select team_id from team_stats where stale and team_id in (:teamIds)",
+                new MapSqlParameterSource("teamIds", teamIds), Long.class));
+    }
+
+    /**
+     * member_id 범위의 팀별 집계 (벌크 연산 chunk 의 변경 전후 비교용)
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, RangeStats> rangeStats(long fromId, long toId) {
+        Map<Long, RangeStats> result = new HashMap<>();
+        jdbcTemplate.query(RANGE_STATS, new MapSqlParameterSource("fromId", fromId).addValue("toId", toId), rs -> {
+            result.put(rs.getLong("team_id"), new RangeStats(rs.getLong("member_count"), rs.getLong("age_sum"),
+                    rs.getInt("min_age"), rs.getInt("max_age")));
+        });
+        return result;
+    }
+
+    /**
+     * 같은 member_id 범위의 변경 전(before) 집계를 빼고 변경 후(after) 집계를 더한다.
+     * 변경 후 최소(최대) 나이가 변경 전보다 크면(작으면) 최소(최대) 나이였던 회원이 빠졌을 수 있으므로 APPLY_DELTA 가 stale 로 표시한다.
+     * 그런 팀을 돌려주므로 모든 범위를 반영한 뒤 recomputeStale 로 한번에 정리한다.
+     */
+    @Transactional
+    public Set<Long> applyRangeDelta(Map<Long, RangeStats> before, Map<Long, RangeStats> after) {
+        SortedSet<Long> teamIds = new TreeSet<>(before.keySet());
+        teamIds.addAll(after.keySet());
+        Set<Long> minMaxRemoved = new HashSet<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long teamId : teamIds) {
+            RangeStats b = before.get(teamId);
+            RangeStats a = after.get(teamId);
+            if (Objects.equals(b, a)) {
+                continue;
+            }
+            Delta delta = new Delta();
+            if (b != null) {
+                delta.count -= b.getMemberCount();
+                delta.ageSum -= b.getAgeSum();
+                delta.removedMin = a == null || a.getMinAge() > b.getMinAge() ? b.getMinAge() : null;
+                delta.removedMax = a == null || a.getMaxAge() < b.getMaxAge() ? b.getMaxAge() : null;
+            }
+            if (a != null) {
+                delta.count += a.getMemberCount();
+                delta.ageSum += a.getAgeSum();
+                delta.addedMin = a.getMinAge();
+                delta.addedMax = a.getMaxAge();
+            }
+            if (!applyDelta(teamId, delta)) {
+                missing.add(teamId);
+            } else if (delta.removedMin != null || delta.removedMax != null) {
+                minMaxRemoved.add(teamId);
+            }
+        }
+        recompute(missing);
+        return minMaxRemoved;
+    }
+
+    @Transactional(readOnly = true)
+    public List<Long> findDriftedTeamIds() {
+        return jdbcTemplate.queryForList(DRIFTED_TEAM_IDS, Collections.emptyMap(), Long.class);
+    }
+
+    // ===== 엔티티 변경 (TeamStatsListener) =====
+
+    public void onTeamAdded(Long teamId) {
+        pending().addedTeams.add(teamId);
+    }
+
+    public void onTeamRemoved(Long teamId) {
+        Pending pending = pending();
+        pending.addedTeams.remove(teamId);
+        pending.deltas.remove(teamId);
+        pending.removedTeams.add(teamId);
+    }
+
+    public void onMemberAdded(Long teamId, int age) {
+        if (teamId != null) {
+            pending().delta(teamId).add(age);
+        }
+    }
+
+    public void onMemberRemoved(Long teamId, int age) {
+        if (teamId != null) {
+            pending().delta(teamId).remove(age);
+        }
+    }
+
+    /**
+     * 현재 트랜잭션에 모아둔 증감을 바로 반영한다. (같은 트랜잭션에서 집계를 읽기 전)
+     */
+    void flushPending() {
+        em.flush(); //아직 flush 되지 않은 엔티티 변경의 이벤트부터 받는다.
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending != null && !pending.isEmpty()) {
+            apply(pending);
+        }
+    }
+
+    private Pending pending() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("team_stats 는 트랜잭션 안에서만 갱신할 수 있습니다.");
+        }
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        return pending;
+    }
+
+    private void apply(Pending pending) {
+        for (Long teamId : pending.addedTeams) {
+            jdbcTemplate.update("insert into team_stats (team_id, member_count, age_sum, stale) values (:teamId, 0, 0, false)",
+                    new MapSqlParameterSource("teamId", teamId));
+        }
+        //teamId 순서로 갱신해서 트랜잭션끼리 교착 상태가 생기지 않게 한다.
+        List<Long> missing = new ArrayList<>();
+        for (Map.Entry<Long, Delta> entry : pending.deltas.entrySet()) {
+            if (!applyDelta(entry.getKey(), entry.getValue())) {
+                missing.add(entry.getKey()); //집계를 만들기 전부터 있던 팀
+            }
+        }
+        if (!pending.removedTeams.isEmpty()) {
+            jdbcTemplate.update("delete from team_stats where team_id in (:teamIds)",
+                    new MapSqlParameterSource("teamIds", pending.removedTeams));
+        }
+        pending.clear();
+        recompute(missing);
+    }
+
+    //team_stats 행이 없으면 false
+    private boolean applyDelta(Long teamId, Delta delta) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("teamId", teamId)
+                .addValue("count", delta.count)
+                .addValue("ageSum", delta.ageSum)
+                .addValue("addedMin", delta.addedMin)
+                .addValue("addedMax", delta.addedMax)
+                .addValue("removedMin", delta.removedMin)
+                .addValue("removedMax", delta.removedMax);
+        return jdbcTemplate.update(APPLY_DELTA, params) > 0;
+    }
+
+    private final class Pending implements TransactionSynchronization {
+
+        private final Set<Long> addedTeams = new LinkedHashSet<>();
+        private final SortedMap<Long, Delta> deltas = new TreeMap<>();
+        private final Set<Long> removedTeams = new LinkedHashSet<>();
+
+        Delta delta(Long teamId) {
+            return deltas.computeIfAbsent(teamId, id -> new Delta());
+        }
+
+        boolean isEmpty() {
+            return addedTeams.isEmpty() && deltas.isEmpty() && removedTeams.isEmpty();
+        }
+
+        void clear() {
+            addedTeams.clear();
+            deltas.clear();
+            removedTeams.clear();
+        }
+
+        //마지막 flush 에서 나오는 변경까지 모은 다음 반영한다.
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            if (isEmpty()) {
+                return;
+            }
+            em.flush();
+            apply(this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(TeamStatsRepository.this);
+        }
+    }
+
+    private static final class Delta {
+
+        private long count;
+        private long ageSum;
+        private Integer addedMin;
+        private Integer addedMax;
+        private Integer removedMin;
+        private Integer removedMax;
+
+        void add(int age) {
+            count++;
+            ageSum += age;
+            addedMin = addedMin == null ? age : Math.min(addedMin, age);
+            addedMax = addedMax == null ? age : Math.max(addedMax, age);
+        }
+
+        void remove(int age) {
+            count--;
+            ageSum -= age;
+            removedMin = removedMin == null ? age : Math.min(removedMin, age);
+            removedMax = removedMax == null ? age : Math.max(removedMax, age);
+        }
+    }
+
+    //member_id 범위 안의 한 팀 집계. 범위에 그 팀 회원이 없으면 만들지 않으므로 min/max 는 항상 있다.
+    @lombok.Value
+    static class RangeStats {
+        long memberCount;
+        long ageSum;
+        int minAge;
+        int maxAge;
+    }
+}
@@ -0,0 +1,113 @@
+package study.querydsl.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberShards;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 스테이징/성능 테스트용 대량 데이터 적재
+ * - hibernate.jdbc.batch_size, order_inserts 로 insert 를 JDBC batch 로 묶는다.
+ * - batchSize 마다 flush/clear 해서 영속성 컨텍스트가 커지지 않게 한다.
+ * - chunkSize 마다 커밋해서 트랜잭션 크기를 제한한다.
+ * - id 는 pooled 시퀀스라 insert 마다 시퀀스를 호출하지 않는다.
+ */
+@Slf4j
+@Service
+public class MemberBulkLoadService {
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberShards shards;
+    private final int batchSize;
+    private final int chunkSize;
+
+    public MemberBulkLoadService(EntityManager em,
+                                 PlatformTransactionManager transactionManager,
+                                 MemberShards shards,
+                                 @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:100}") int batchSize,
+                                 @Value("${member.bulk-load.chunk-size:10000}") int chunkSize) {
+        this.em = em;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shards = shards;
+        this.batchSize = batchSize;
+        this.chunkSize = chunkSize;
+    }
+
+    public Result load(int teamCount, int memberCount) {
+        shards.requireUnsharded("대량 적재"); //기본 DataSource 에 적재한다.
+        long start = System.nanoTime();
+
+        List<Long> teamIds = transactionTemplate.execute(status -> {
+            List<Long> ids = new ArrayList<>(teamCount);
+            for (int i = 0; i < teamCount; i++) {
+                Team team = new Team("team" + i);
+                em.persist(team);
+                ids.add(team.getId());
+                flushAndClearIfBatchFull(i + 1);
+            }
+            return ids;
+        });
+
+        for (int from = 0; from < memberCount; from += chunkSize) {
+            int to = Math.min(from + chunkSize, memberCount);
+            loadMembers(teamIds, from, to);
+            log.info("bulk load members {}/{}", to, memberCount);
+        }
+
+        Result result = new Result(teamCount, memberCount, System.nanoTime() - start);
+        log.info("bulk load done. teams={}, members={}, elapsed={}ms, rows/sec={}",
+                result.getTeams(), result.getMembers(), result.getElapsedMillis(), result.getRowsPerSecond());
+        return result;
+    }
+
+    private void loadMembers(List<Long> teamIds, int from, int to) {
+        transactionTemplate.executeWithoutResult(status -> {
+            readOnlySecondLevelCache();
+            for (int i = from; i < to; i++) {
+                //clear 이후에는 프록시로 다시 참조한다. changeTeam 이 프록시를 초기화하지 않으므로 팀을 조회하지 않는다.
+                Team team = em.getReference(Team.class, teamIds.get(i % teamIds.size()));
+                em.persist(new Member("member" + i, i % 100, team));
+                flushAndClearIfBatchFull(i - from + 1);
+            }
+        });
+    }
+
+    private void flushAndClearIfBatchFull(int count) {
+        if (count % batchSize == 0) {
+            em.flush();
+            em.clear();
+        }
+    }
+
+    //적재하는 회원으로 2차 캐시를 채우지 않는다.
+    private void readOnlySecondLevelCache() {
+        em.unwrap(Session.class).setCacheMode(CacheMode.GET);
+    }
+
+    @Getter
+    public static class Result {
+        private final int teams;
+        private final int members;
+        private final long elapsedMillis;
+        private final long rowsPerSecond;
+
+        public Result(int teams, int members, long elapsedNanos) {
+            this.teams = teams;
+            this.members = members;
+            this.elapsedMillis = elapsedNanos / 1_000_000;
+            this.rowsPerSecond = elapsedNanos == 0 ? 0 : (long) ((teams + members) * 1_000_000_000.0 / elapsedNanos);
+        }
+    }
+}
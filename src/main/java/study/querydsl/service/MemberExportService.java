@@ -0,0 +1,78 @@
+package study.querydsl.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberShards;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+public class MemberExportService {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberShards shards;
+    private final ObjectMapper objectMapper;
+
+    @Value("${member.export.fetch-size:1000}")
+    private int fetchSize;
+
+    /**
+     * 검색 결과를 NDJSON 으로 out 에 바로 쓴다.
+     * 커서가 열려있는 동안 트랜잭션(커넥션)이 유지되어야 하므로 쓰기까지 이 메서드 안에서 끝낸다.
+     * 샤드 모드면 샤드를 하나씩 차례로 내보낸다. (샤드 트랜잭션은 MemberShards 가 연다)
+     *
+     * @return 내보낸 row 수
+     */
+    @Transactional(readOnly = true)
+    public long export(MemberSearchCondition condition, OutputStream out) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(MemberTeamDto.class);
+        long[] count = {0};
+        if (shards.isEnabled()) {
+            try {
+                shards.forEach(shard -> {
+                    try (Stream<MemberTeamDto> rows = MemberJpaRepository.searchStream(shard, condition, fetchSize)) {
+                        count[0] += write(rows, writer, out, count[0]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        } else {
+            try (Stream<MemberTeamDto> rows = memberJpaRepository.searchStream(condition, fetchSize)) {
+                count[0] += write(rows, writer, out, count[0]);
+            }
+        }
+        out.flush();
+        return count[0];
+    }
+
+    //written 은 앞에서 이미 쓴 row 수 (fetchSize 마다 flush)
+    private long write(Stream<MemberTeamDto> rows, ObjectWriter writer, OutputStream out, long written) throws IOException {
+        long count = 0;
+        Iterator<MemberTeamDto> iterator = rows.iterator();
+        while (iterator.hasNext()) {
+            out.write(writer.writeValueAsBytes(iterator.next()));
+            out.write('\n');
+            if ((written + ++count) % fetchSize == 0) {
+                out.flush();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,77 @@
+package study.querydsl.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.repository.MemberSearchIndex;
+import study.querydsl.repository.TeamStatsRepository;
+
+import java.util.List;
+
+/**
+ * team_stats 를 member 전체 group by 와 주기적으로 비교해서 어긋난 팀만 다시 집계한다.
+ * - 증감 반영이 빠지는 경우 (JPQL/SQL 로 직접 바꾼 member, 집계 테이블 이전 데이터, stale 로 남은 최소/최대 나이) 를 정리한다.
+ * - 비교는 read-only 트랜잭션, 다시 집계는 팀 batchSize 개씩 별도 트랜잭션으로 한다.
+ * - team.stats.drift 카운터로 어긋난 팀 수를 남긴다.
+ * - 어긋났다는 것은 엔티티 이벤트 없이 member 가 바뀌었다는 뜻이므로 메모리 검색 인덱스도 다시 만든다.
+ */
+@Slf4j
+@Service
+public class TeamStatsReconciler {
+
+    private final TeamStatsRepository teamStatsRepository;
+    private final MemberSearchIndex memberSearchIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectProvider<MeterRegistry> registry;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public TeamStatsReconciler(TeamStatsRepository teamStatsRepository,
+                               MemberSearchIndex memberSearchIndex,
+                               PlatformTransactionManager transactionManager,
+                               ObjectProvider<MeterRegistry> registry,
+                               @Value("${member.team-stats.reconcile.enabled:true}") boolean enabled,
+                               @Value("${member.team-stats.reconcile.batch-size:1000}") int batchSize) {
+        this.teamStatsRepository = teamStatsRepository;
+        this.memberSearchIndex = memberSearchIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.registry = registry;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${member.team-stats.reconcile.interval:PT10M}",
+            fixedDelayString = "${member.team-stats.reconcile.interval:PT10M}")
+    public void scheduledReconcile() {
+        if (enabled) {
+            reconcile();
+        }
+    }
+
+    /**
+     * @return 다시 집계한 팀 수
+     */
+    public int reconcile() {
+        long start = System.nanoTime();
+        List<Long> drifted = teamStatsRepository.findDriftedTeamIds();
+        for (int from = 0; from < drifted.size(); from += batchSize) {
+            List<Long> teamIds = drifted.subList(from, Math.min(from + batchSize, drifted.size()));
+            transactionTemplate.executeWithoutResult(status -> teamStatsRepository.recompute(teamIds));
+        }
+
+        MeterRegistry meterRegistry = registry.getIfAvailable();
+        if (meterRegistry != null) {
+            meterRegistry.counter("team.stats.drift").increment(drifted.size());
+        }
+        if (!drifted.isEmpty()) {
+            memberSearchIndex.invalidate();
+            log.warn("team_stats reconciled. drifted teams={}, elapsed={}ms", drifted.size(), (System.nanoTime() - start) / 1_000_000);
+        }
+        return drifted.size();
+    }
+}
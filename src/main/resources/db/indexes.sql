@@ -0,0 +1,7 @@
+-- 검색 조건(MemberRepositoryImpl) 인덱스. Member, Team 의 @Table(indexes) 와 같다.
+-- ddl-auto: create 를 쓰지 않는 환경에서 직접 실행한다. 여러번 실행해도 안전하다.
+
+create index if not exists idx_member_username on member (username);
+create index if not exists idx_member_age_id on member (age, member_id);
+create index if not exists idx_member_team_age on member (team_id, age);
+create index if not exists idx_team_name on team (name);
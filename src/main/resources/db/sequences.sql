@@ -0,0 +1,10 @@
+-- Member, Team id 시퀀스 (ConfigurableSequenceGenerator, pooled-lo)
+-- ddl-auto: create 를 쓰지 않는 환경에서 직접 실행한다. 여러번 실행해도 안전하다.
+-- increment by 는 study.id.allocation_size 와 같아야 한다. allocation size 를 바꾸면 increment by 도 같이 바꾼다.
+-- 기존 데이터의 최대 id 다음 값에서 시작해야 id 가 겹치지 않는다.
+
+create sequence if not exists member_seq start with 1 increment by 50;
+create sequence if not exists team_seq start with 1 increment by 50;
+
+alter sequence member_seq restart with (select coalesce(max(member_id), 0) + 1 from member) increment by 50;
+alter sequence team_seq restart with (select coalesce(max(team_id), 0) + 1 from team) increment by 50;
@@ -0,0 +1,21 @@
+-- 팀별 집계 테이블 (TeamStats, TeamStatsRepository)
+-- ddl-auto: create 를 쓰지 않는 환경에서 직접 실행한다. 여러번 실행해도 안전하다.
+-- 기존 데이터는 아래 merge 로 한번 채운다. 이후에는 증감 반영과 TeamStatsReconciler 가 맞춘다.
+
+create table if not exists team_stats (
+    team_id bigint not null primary key,
+    member_count bigint not null,
+    age_sum bigint not null,
+    min_age integer,
+    max_age integer,
+    stale boolean not null
+);
+
+merge into team_stats s
+using (select t.team_id, count(m.member_id) member_count, coalesce(sum(m.age), 0) age_sum, min(m.age) min_age, max(m.age) max_age
+       from team t left join member m on m.team_id = t.team_id
+       group by t.team_id) a
+on s.team_id = a.team_id
+when matched then update set member_count = a.member_count, age_sum = a.age_sum, min_age = a.min_age, max_age = a.max_age, stale = false
+when not matched then insert (team_id, member_count, age_sum, min_age, max_age, stale)
+    values (a.team_id, a.member_count, a.age_sum, a.min_age, a.max_age, false);
@@ -0,0 +1,121 @@
+package study.querydsl.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.metrics.SqlStatementCounter;
+import study.querydsl.repository.MemberRankingRepository;
+
+import javax.persistence.EntityManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 엔드포인트별 SQL 실행 수 고정
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@Transactional
+class MemberControllerTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    public void v1() throws Exception {
+        assertStatements(1, "/v1/members?teamName=teamA");
+    }
+
+    @Test
+    public void v2() throws Exception {
+        assertStatements(2, "/v2/members?page=0&size=2"); //content + count
+    }
+
+    @Test
+    public void v3() throws Exception {
+        assertStatements(2, "/v3/members?page=0&size=2"); //content + count
+        assertStatements(1, "/v3/members?page=0&size=10"); //한 페이지에 다 들어오면 count 생략
+    }
+
+    @Test
+    public void v4() throws Exception {
+        assertStatements(1, "/v4/members?size=2");
+    }
+
+    @Test
+    public void v5() throws Exception {
+        assertStatements(1, "/v5/members?page=0&size=2"); //count 쿼리 없음
+        assertStatements(1, "/v5/members?page=1&size=2");
+    }
+
+    @Test
+    public void sort() throws Exception {
+        mockMvc.perform(get("/v3/members?sort=age,desc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username").value("member4"));
+        mockMvc.perform(get("/v3/members?sort=teamName,asc")).andExpect(status().isBadRequest()); //인덱스 없는 정렬
+        mockMvc.perform(get("/v3/members?sort=age,asc&sort=teamId,asc")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void ranking() throws Exception {
+        assertStatements(1, "/v1/members/top-by-team?limit=1");
+        assertStatements(1, "/v1/members/top-by-team?limit=1&afterTeamId=0");
+        assertStatements(1, "/v1/members/above-team-average");
+        mockMvc.perform(get("/v1/members/top-by-team?limit=0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/members/above-team-average?limit=1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/v1/members/above-team-average?limit=0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v1/members/above-team-average?limit=" + (MemberRankingRepository.MAX_ROWS + 1)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void v4Size() throws Exception {
+        mockMvc.perform(get("/v4/members?size=0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v4/members?size=1001")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/v4/members?size=1")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void invalidSearchRequest() throws Exception {
+        mockMvc.perform(get("/v4/members?cursor=not-a-cursor"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value("잘못된 cursor 입니다: not-a-cursor"));
+    }
+
+    private void assertStatements(long expected, String url) throws Exception {
+        SqlStatementCounter.Counts before = SqlStatementCounter.snapshot();
+        mockMvc.perform(get(url)).andExpect(status().isOk());
+        assertEquals(expected, SqlStatementCounter.since(before).getStatements(), url);
+    }
+}
@@ -0,0 +1,204 @@
+package study.querydsl.datasource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberSearchCache;
+
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * in-memory H2 두개(primary, replica)로 라우팅 확인
+ * replica 에는 복제 대신 테이블과 데이터를 직접 넣어서 어느 쪽에서 읽었는지 구분한다.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1",
+        "datasource.routing.enabled=true",
+        "datasource.routing.replicas[0].url=" + ReplicaRoutingDataSourceTest.REPLICA_URL,
+        "datasource.routing.replicas[0].username=sa",
+        "datasource.routing.max-lag=5s",
+        "datasource.routing.check-interval=1h", //상태 확인은 테스트에서 직접
+        "datasource.routing.primary-after-write=300ms",
+        "spring.datasource.hikari.maximum-pool-size=7",
+        "member.search-cache.enabled=false"
+})
+class ReplicaRoutingDataSourceTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    @Autowired
+    DataSource dataSource;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    ReplicaRoutingDataSource routingDataSource;
+
+    @BeforeEach
+    public void before() throws SQLException {
+        routingDataSource = dataSource.unwrap(ReplicaRoutingDataSource.class);
+        replica("drop all objects",
+                "create table team (team_id bigint primary key, name varchar(255))",
+                "create table member (member_id bigint primary key, age int not null, username varchar(255), team_id bigint)",
+                "insert into member (member_id, age, username) values (1, 10, 'replicaMember')",
+                ReplicaRoutingDataSource.CREATE_HEARTBEAT,
+                "merge into replica_heartbeat key (id) values (1, current_timestamp)");
+        routingDataSource.checkReplicas();
+    }
+
+    @Test
+    public void readOnlyToReplicaWriteToPrimary() throws InterruptedException {
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Member("primaryMember", 20)));
+
+        //쓰기 커밋 직후 같은 스레드(요청)의 조회는 replica 가 따라오지 못했을 수 있으므로 primary
+        assertTrue(routingDataSource.recentlyWritten());
+        assertThat(search()).extracting("username").containsExactly("primaryMember");
+
+        //primary-after-write 이후 조회 메서드는 read-only 트랜잭션 -> replica
+        Thread.sleep(400);
+        assertFalse(routingDataSource.recentlyWritten());
+        assertEquals(1, routingDataSource.availableReplicas());
+        assertThat(search()).extracting("username").containsExactly("replicaMember");
+
+        //쓰기 트랜잭션 안의 조회는 primary
+        List<String> inWriteTransaction = transactionTemplate.execute(status ->
+                memberJpaRepository.findAll_Querydsl().stream().map(Member::getUsername).collect(Collectors.toList()));
+        assertThat(inWriteTransaction).containsExactly("primaryMember");
+
+        transactionTemplate.executeWithoutResult(status -> em.createQuery("delete from Member").executeUpdate());
+    }
+
+    @Test
+    public void lagFallbackToPrimary() throws SQLException {
+        replica("merge into replica_heartbeat key (id) values (1, dateadd('MINUTE', -1, current_timestamp))");
+        routingDataSource.checkReplicas();
+
+        assertEquals(0, routingDataSource.availableReplicas());
+        assertThat(search()).isEmpty(); //primary 에는 member 가 없다.
+    }
+
+    @Test
+    public void unhealthyFallbackToPrimary() throws SQLException {
+        replica("drop table replica_heartbeat");
+        routingDataSource.checkReplicas();
+
+        assertEquals(0, routingDataSource.availableReplicas());
+        assertThat(search()).isEmpty();
+    }
+
+    @Test
+    public void readsDoNotPinPrimary() throws Exception {
+        Thread.sleep(400); //다른 테스트의 쓰기 이후 대기
+        search();
+        assertFalse(routingDataSource.recentlyWritten());
+
+        //쓰기 SQL 없는 read-write 트랜잭션
+        transactionTemplate.executeWithoutResult(status -> memberJpaRepository.findAll_Querydsl());
+        assertFalse(routingDataSource.recentlyWritten());
+
+        //트랜잭션 밖의 조회 (primary 커넥션)
+        try (Connection con = dataSource.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.executeQuery("select count(*) from member").close();
+        }
+        assertFalse(routingDataSource.recentlyWritten());
+    }
+
+    @Test
+    public void writeStickinessScopedToWriter() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> em.persist(new Member("primaryMember", 20)));
+        assertTrue(routingDataSource.recentlyWritten());
+
+        //다른 스레드(요청)는 계속 replica
+        List<MemberTeamDto> other = CompletableFuture.supplyAsync(this::search).get();
+        assertThat(other).extracting("username").containsExactly("replicaMember");
+
+        //HTTP 요청이면 세션에 남아서 같은 세션의 다음 요청도 primary
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.getSession(true);
+        MockHttpServletRequest nextRequest = new MockHttpServletRequest();
+        nextRequest.setSession(request.getSession());
+        try {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+            assertFalse(routingDataSource.recentlyWritten()); //스레드에 남은 쓰기는 요청과 무관
+            transactionTemplate.executeWithoutResult(status -> em.createQuery("delete from Member").executeUpdate());
+
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(nextRequest));
+            assertTrue(routingDataSource.recentlyWritten());
+
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+            assertFalse(routingDataSource.recentlyWritten());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    @Test
+    public void replicaResultNotCachedWithinLag() throws InterruptedException {
+        MemberSearchCache cache = new MemberSearchCache(true, 100, Duration.ofMinutes(1), Duration.ofMillis(300));
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        MemberSearchCondition condition = new MemberSearchCondition();
+        Thread.sleep(400); //다른 테스트의 쓰기 이후 대기
+
+        cache.onWrite();
+        readOnly.executeWithoutResult(status -> {
+            cache.get("search", condition, Pageable.unpaged(), () -> memberJpaRepository.searchByWhereParam(condition));
+            assertTrue(ReplicaRoutingDataSource.isCurrentTransactionOnReplica());
+        });
+        assertEquals(0, cache.size());
+
+        Thread.sleep(400);
+        readOnly.executeWithoutResult(status ->
+                cache.get("search", condition, Pageable.unpaged(), () -> memberJpaRepository.searchByWhereParam(condition)));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void hikariPropertiesBoundToPrimary() {
+        assertEquals(7, routingDataSource.getPrimary().getMaximumPoolSize());
+    }
+
+    private List<MemberTeamDto> search() {
+        return memberJpaRepository.search(new MemberSearchCondition());
+    }
+
+    private void replica(String... sqls) throws SQLException {
+        try (Connection con = DriverManager.getConnection(REPLICA_URL, "sa", ""); Statement stmt = con.createStatement()) {
+            for (String sql : sqls) {
+                stmt.execute(sql);
+            }
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package study.querydsl.entity;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
 import java.util.List;
 
@@ -18,6 +21,9 @@ class MemberTest {
     @Autowired
     EntityManager em;
 
+    @Autowired
+    EntityManagerFactory emf;
+
     @Test
     public void testEntity() {
         Team teamA = new Team("teamA");
@@ -48,4 +54,37 @@ class MemberTest {
 
     }
 
+    /**
+     * 팀 변경시 팀의 members 컬렉션을 로딩하지 않고 UPDATE 한번만 나가야 한다.
+     */
+    @Test
+    public void changeTeamDoesNotLoadMembers() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        Member member1 = new Member("member1", 10, teamA);
+        em.persist(member1);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("teamB" + i, 20, teamB));
+        }
+
+        em.flush();
+        em.clear();
+
+        Member findMember = em.find(Member.class, member1.getId());
+        Team findTeamB = em.find(Team.class, teamB.getId());
+
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        findMember.changeTeam(findTeamB);
+        em.flush();
+
+        assertFalse(emf.getPersistenceUnitUtil().isLoaded(findTeamB, "members"));
+        assertEquals(1, statistics.getEntityUpdateCount());
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getCollectionLoadCount());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,83 @@
+package study.querydsl.entity;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * member.entity-cache.enabled 기본값(false)이면 @Cacheable 엔티티도 매번 DB 에서 읽는다.
+ */
+@SpringBootTest
+class SecondLevelCacheDisabledTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    Long memberId;
+    Long teamId;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            Member member1 = new Member("member1", 10, teamA);
+            em.persist(member1);
+            memberId = member1.getId();
+            teamId = teamA.getId();
+        });
+        statistics().clear();
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, memberId));
+            em.remove(em.find(Team.class, teamId));
+        });
+    }
+
+    @Test
+    public void disabledByDefault() {
+        assertFalse(emf.unwrap(SessionFactory.class).getSessionFactoryOptions().isSecondLevelCacheEnabled());
+        assertFalse(emf.unwrap(SessionFactory.class).getSessionFactoryOptions().isQueryCacheEnabled());
+    }
+
+    @Test
+    public void findByIdAlwaysHitsDatabase() {
+        for (int i = 0; i < 2; i++) {
+            transactionTemplate.executeWithoutResult(status -> {
+                Member findMember = memberJpaRepository.findById(memberId).get();
+                assertEquals("teamA", findMember.getTeam().getName());
+            });
+        }
+
+        assertEquals(4, statistics().getPrepareStatementCount()); //두번 모두 member, team 조회
+        assertEquals(0, statistics().getSecondLevelCachePutCount());
+        assertFalse(emf.getCache().contains(Member.class, memberId));
+    }
+
+    private Statistics statistics() {
+        return emf.unwrap(SessionFactory.class).getStatistics();
+    }
+}
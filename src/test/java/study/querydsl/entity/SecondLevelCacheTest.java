@@ -0,0 +1,89 @@
+package study.querydsl.entity;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 2차 캐시는 커밋된 데이터만 올라가므로 롤백 테스트(@Transactional) 대신 직접 커밋하고 지운다.
+ * 기본은 꺼져 있으므로 member.entity-cache.enabled=true 로 켠다. (꺼진 경우는 SecondLevelCacheDisabledTest)
+ */
+@SpringBootTest(properties = "member.entity-cache.enabled=true")
+class SecondLevelCacheTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    Long memberId;
+    Long teamId;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("teamA");
+            em.persist(teamA);
+            Member member1 = new Member("member1", 10, teamA);
+            em.persist(member1);
+            memberId = member1.getId();
+            teamId = teamA.getId();
+        });
+        emf.getCache().evictAll();
+        statistics().clear();
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            em.remove(em.find(Member.class, memberId));
+            em.remove(em.find(Team.class, teamId));
+        });
+    }
+
+    @Test
+    public void enabled() {
+        assertTrue(emf.unwrap(SessionFactory.class).getSessionFactoryOptions().isSecondLevelCacheEnabled());
+        assertTrue(emf.unwrap(SessionFactory.class).getSessionFactoryOptions().isQueryCacheEnabled());
+    }
+
+    @Test
+    public void findByIdAndTeamNavigationHitCache() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Member findMember = memberJpaRepository.findById(memberId).get();
+            assertEquals("teamA", findMember.getTeam().getName());
+        });
+        long firstStatements = statistics().getPrepareStatementCount();
+        assertEquals(2, firstStatements); //member, team 각각 한번씩 DB 조회
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Member findMember = memberJpaRepository.findById(memberId).get();
+            assertEquals("teamA", findMember.getTeam().getName());
+        });
+
+        assertEquals(firstStatements, statistics().getPrepareStatementCount()); //두번째는 DB 조회 없음
+        assertEquals(2, statistics().getSecondLevelCacheHitCount());
+    }
+
+    private Statistics statistics() {
+        return emf.unwrap(SessionFactory.class).getStatistics();
+    }
+}
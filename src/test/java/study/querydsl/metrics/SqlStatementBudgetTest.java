@@ -0,0 +1,119 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * p6spy(SqlStatementCounter) 를 거쳐 실제로 실행된 SQL 로 예산을 검사한다.
+ */
+@SpringBootTest(properties = {
+        "sql-budget.max-statements=2",
+        "sql-budget.max-repeats=2",
+        "sql-budget.endpoints.[repeat-test]=10",
+        "sql-budget.endpoints.[/v1/members]=0"
+})
+@AutoConfigureMockMvc
+class SqlStatementBudgetTest {
+
+    @Autowired
+    SqlStatementBudget sqlStatementBudget;
+
+    @Autowired
+    SqlBudgetProperties properties;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    public void overBudget() {
+        sqlStatementBudget.begin("budget-test");
+        SqlStatementBudget.Scope scope;
+        try {
+            jdbcTemplate.queryForList("select member_id from member");
+            jdbcTemplate.queryForList("select team_id from team");
+            jdbcTemplate.queryForList("select username from member");
+        } finally {
+            scope = sqlStatementBudget.end();
+        }
+
+        assertEquals(3, scope.getStatements());
+        assertEquals(1, scope.getViolations().size());
+        assertTrue(scope.getViolations().get(0).contains("예산 2"));
+    }
+
+    @Test
+    public void repeatedStatement() {
+        sqlStatementBudget.begin("repeat-test");
+        SqlStatementBudget.Scope scope;
+        try {
+            //파라미터만 다른 같은 모양의 SQL 3번 (max-repeats 2) -> N+1
+            for (long id = 1; id <= 3; id++) {
+                jdbcTemplate.queryForList("select username from member where member_id = ?", id);
+            }
+        } finally {
+            scope = sqlStatementBudget.end();
+        }
+
+        assertEquals(1, scope.getViolations().size());
+        assertTrue(scope.getViolations().get(0).contains("N+1"));
+    }
+
+    @Test
+    public void failBeforeStatement() {
+        properties.setFail(true);
+        sqlStatementBudget.begin("fail-test");
+        try {
+            jdbcTemplate.queryForList("select member_id from member");
+            jdbcTemplate.queryForList("select team_id from team");
+            assertThrows(SqlBudgetExceededException.class,
+                    () -> jdbcTemplate.queryForList("select username from member"));
+        } finally {
+            sqlStatementBudget.end();
+            properties.setFail(false);
+        }
+    }
+
+    @Test
+    public void noScopeNoViolation() {
+        //begin 하지 않은 스레드의 SQL 은 세지 않는다.
+        jdbcTemplate.queryForList("select member_id from member");
+        jdbcTemplate.queryForList("select team_id from team");
+        jdbcTemplate.queryForList("select username from member");
+
+        assertNull(sqlStatementBudget.end());
+    }
+
+    @Test
+    public void interceptorUsesUrlPattern() throws Exception {
+        double before = violations("/v1/members");
+
+        //캐시에 없는 조건이어야 SQL 이 실행된다.
+        mockMvc.perform(get("/v1/members?username=budget-interceptor-test"))
+                .andExpect(status().isOk());
+
+        assertEquals(before + 1, violations("/v1/members"));
+    }
+
+    private double violations(String endpoint) {
+        Counter counter = meterRegistry.find("sql.budget.violations")
+                .tags("endpoint", endpoint, "type", "budget")
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
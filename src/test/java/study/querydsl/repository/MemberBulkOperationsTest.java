@@ -0,0 +1,176 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * chunk 마다 커밋하므로 롤백 테스트(@Transactional) 대신 직접 커밋하고 지운다.
+ */
+@SpringBootTest(properties = "member.bulk.chunk-size=3")
+class MemberBulkOperationsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberBulkOperations memberBulkOperations;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    @BeforeEach
+    public void before() {
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 10; i++) {
+                em.persist(new Member("bulk" + i, i * 10));
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> em
+                .createQuery("delete from Member m where m.username like 'bulk%'")
+                .executeUpdate());
+    }
+
+    @Test
+    public void bulkUpdateInChunks() {
+        List<MemberBulkOperations.Progress> progresses = new ArrayList<>();
+
+        MemberBulkOperations.Result result = memberBulkOperations.update(
+                member.username.startsWith("bulk").and(member.age.goe(50)),
+                clause -> clause.set(member.age, member.age.add(1)),
+                progresses::add);
+
+        assertEquals(5, result.getAffectedRows());
+        assertTrue(result.getChunks() >= 2);
+        assertEquals(result.getChunks(), progresses.size());
+        assertEquals(5, progresses.get(progresses.size() - 1).getTotalRows());
+
+        List<Member> updated = transactionTemplate.execute(status -> em
+                .createQuery("select m from Member m where m.username like 'bulk%' and m.age >= 50 order by m.age", Member.class)
+                .getResultList());
+        assertEquals(51, updated.get(0).getAge());
+    }
+
+    @Test
+    public void bulkDeleteInChunks() {
+        MemberBulkOperations.Result result = memberBulkOperations.delete(
+                member.username.startsWith("bulk").and(member.age.lt(30)),
+                progress -> {
+                });
+
+        assertEquals(3, result.getAffectedRows());
+    }
+
+    /**
+     * OSIV 처럼 트랜잭션 밖에서 영속성 컨텍스트가 열려 있을 때
+     * 벌크 연산 전에 읽어둔 엔티티가 남아 있으면 다시 조회해도 예전 값이 보인다. -> 벌크 연산이 clear 한다.
+     */
+    @Test
+    public void callerContextSeesBulkUpdate() {
+        EntityManager outer = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(outer));
+        try {
+            Member loaded = findByUsername("bulk7");
+            assertEquals(70, loaded.getAge());
+
+            memberBulkOperations.update(member.username.eq("bulk7"), clause -> clause.set(member.age, 71), progress -> {
+            });
+
+            assertEquals(71, findByUsername("bulk7").getAge());
+            assertFalse(outer.contains(loaded));
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            outer.close();
+        }
+    }
+
+    /**
+     * chunk 마다 팀 전체를 다시 집계하지 않고 범위의 증감만 반영한 결과가 member 집계와 같아야 한다.
+     * 최소/최대 나이였던 회원이 빠진 팀은 마지막에 다시 집계되어 stale 로 남지 않는다.
+     */
+    @Test
+    public void teamStatsFollowChunkDeltas() {
+        Team team = new Team("bulkTeam");
+        transactionTemplate.executeWithoutResult(status -> {
+            em.persist(team);
+            for (int i = 1; i <= 7; i++) {
+                em.persist(new Member("bulkT" + i, i, team));
+            }
+        });
+        try {
+            memberBulkOperations.update(member.team.id.eq(team.getId()).and(member.age.goe(4)),
+                    clause -> clause.set(member.age, member.age.add(10)), progress -> {
+                    });
+            memberBulkOperations.delete(member.team.id.eq(team.getId()).and(member.age.eq(1)), progress -> {
+            });
+
+            TeamStatsDto stats = teamStatsRepository.findAll().stream()
+                    .filter(row -> row.getTeamId().equals(team.getId()))
+                    .findFirst().orElseThrow();
+            assertEquals(6, stats.getMemberCount());
+            assertEquals(2 + 3 + 14 + 15 + 16 + 17, stats.getAgeSum());
+            assertEquals(2, stats.getMinAge());
+            assertEquals(17, stats.getMaxAge());
+            assertFalse(teamStatsRepository.findDriftedTeamIds().contains(team.getId()));
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                em.createQuery("delete from Member m where m.team.id = :teamId")
+                        .setParameter("teamId", team.getId())
+                        .executeUpdate();
+                em.remove(em.find(Team.class, team.getId()));
+            });
+        }
+    }
+
+    @Test
+    public void skipEmptyIdRanges() {
+        //bulk0, bulk9 사이의 id 구간은 chunk 로 실행하지 않는다.
+        MemberBulkOperations.Result result = memberBulkOperations.update(
+                member.username.in("bulk0", "bulk9"),
+                clause -> clause.set(member.age, member.age.add(1)),
+                progress -> {
+                });
+
+        assertEquals(2, result.getAffectedRows());
+        assertEquals(2, result.getChunks());
+    }
+
+    @Test
+    public void rejectInsideTransaction() {
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status ->
+                memberBulkOperations.delete(member.username.eq("bulk0"), progress -> {
+                })));
+    }
+
+    private Member findByUsername(String username) {
+        return em.createQuery("select m from Member m where m.username = :username", Member.class)
+                .setParameter("username", username)
+                .getSingleResult();
+    }
+}
@@ -0,0 +1,87 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class MemberCompiledSearchTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberCompiledSearch memberCompiledSearch;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    /**
+     * 16가지 조건 조합 모두 Querydsl 로 매번 만든 쿼리(searchByWhereParam)와 같은 결과를 내야 한다.
+     */
+    @Test
+    public void sameResultAsQuerydslForEveryShape() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+        em.persist(new Member("member5", 50));
+
+        for (int shape = 0; shape < MemberSearchPredicates.SHAPE_COUNT; shape++) {
+            MemberSearchCondition condition = conditionOf(shape, "member3", "teamB", 20, 40);
+            assertEquals(shape, MemberSearchPredicates.shapeOf(condition));
+
+            List<MemberTeamDto> compiled = memberCompiledSearch.search(em, condition);
+            List<MemberTeamDto> querydsl = memberJpaRepository.searchByWhereParam(condition);
+            assertThat(compiled).as("shape %d", shape).containsExactlyInAnyOrderElementsOf(querydsl);
+        }
+    }
+
+    /**
+     * 같은 shape 는 값이 달라도 한번 만든 JPQL 을 다시 쓰고, JPQL 에는 값이 들어가지 않는다.
+     */
+    @Test
+    public void planPerShape() {
+        int shape = MemberSearchPredicates.TEAM_NAME | MemberSearchPredicates.AGE_GOE;
+        MemberCompiledSearch.Plan plan = memberCompiledSearch.plan(em, conditionOf(shape, null, "teamA", 10, null));
+
+        assertSame(plan, memberCompiledSearch.plan(em, conditionOf(shape, null, "teamB", 30, null)));
+        assertNotSame(plan, memberCompiledSearch.plan(em, conditionOf(MemberSearchPredicates.AGE_GOE, null, null, 10, null)));
+        assertThat(plan.jpql).doesNotContain("teamA").contains("?1", "?2");
+        assertThat(plan.jpql).doesNotContainIgnoringCase("left join"); //teamName 조건이 있으면 inner join
+    }
+
+    private MemberSearchCondition conditionOf(int shape, String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        if ((shape & MemberSearchPredicates.USERNAME) != 0) {
+            condition.setUsername(username);
+        }
+        if ((shape & MemberSearchPredicates.TEAM_NAME) != 0) {
+            condition.setTeamName(teamName);
+        }
+        if ((shape & MemberSearchPredicates.AGE_GOE) != 0) {
+            condition.setAgeGoe(ageGoe);
+        }
+        if ((shape & MemberSearchPredicates.AGE_LOE) != 0) {
+            condition.setAgeLoe(ageLoe);
+        }
+        return condition;
+    }
+}
@@ -0,0 +1,124 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@Transactional
+class MemberCountQueryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @BeforeEach
+    public void before() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+        em.persist(new Member("member3", 50)); //team 없는 member 도 username, age 조건에는 걸린다.
+    }
+
+    /**
+     * 16가지 조건 조합 모두 count 가 content 개수와 같아야 한다.
+     * {username, teamName, ageGoe, ageLoe, 예상 개수}
+     */
+    @Test
+    public void countSameAsContentForEveryShape() {
+        Object[][] cases = {
+                {null, null, null, null, 5},
+                {null, null, null, 40, 4},
+                {null, null, 20, null, 4},
+                {null, null, 20, 40, 3},
+                {null, "teamB", null, null, 2},
+                {null, "teamB", null, 30, 1},
+                {null, "teamB", 35, null, 1},
+                {null, "teamB", 20, 40, 2},
+                {"member3", null, null, null, 2},
+                {"member3", null, null, 40, 1},
+                {"member3", null, 40, null, 1},
+                {"member3", null, 20, 60, 2},
+                {"member3", "teamB", null, null, 1},
+                {"member3", "teamB", null, 20, 0},
+                {"member3", "teamB", 20, null, 1},
+                {"member3", "teamA", 20, 40, 0},
+        };
+        for (Object[] c : cases) {
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setUsername((String) c[0]);
+            condition.setTeamName((String) c[1]);
+            condition.setAgeGoe((Integer) c[2]);
+            condition.setAgeLoe((Integer) c[3]);
+            int expected = (Integer) c[4];
+            String message = condition.toString();
+
+            List<MemberTeamDto> content = memberRepository.search(condition);
+
+            //size 1 이면 searchPageComplex 도 count 쿼리를 실행한다.
+            Page<MemberTeamDto> simple = memberRepository.searchPageSimple(condition, PageRequest.of(0, 1));
+            Page<MemberTeamDto> complex = memberRepository.searchPageComplex(condition, PageRequest.of(0, 1));
+
+            assertEquals(expected, content.size(), message);
+            assertEquals(expected, simple.getTotalElements(), message);
+            assertEquals(expected, complex.getTotalElements(), message);
+        }
+    }
+
+    @Test
+    public void joinTeamOnlyWithTeamCondition() {
+        MemberCountQuery countQuery = new MemberCountQuery(new MemberSearchCache(false, 1, Duration.ofMinutes(1), Duration.ofSeconds(5)), 100, Duration.ofMinutes(1));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        assertFalse(countQuery.query(queryFactory, condition).toString().contains("team"));
+
+        condition.setTeamName("teamA");
+        assertTrue(countQuery.query(queryFactory, condition).toString().contains("inner join"));
+    }
+
+    @Test
+    public void approximateAboveThreshold() {
+        //테스트 트랜잭션의 쓰기와 무관한 캐시 인스턴스를 넘겨서 count 를 남기게 한다.
+        MemberCountQuery countQuery = new MemberCountQuery(new MemberSearchCache(false, 1, Duration.ofMinutes(1), Duration.ofSeconds(5)), 3, Duration.ofMinutes(1));
+
+        MemberSearchCondition all = new MemberSearchCondition();
+        MemberSearchCondition teamA = new MemberSearchCondition();
+        teamA.setTeamName("teamA");
+        assertEquals(5, countQuery.count(queryFactory, all));
+        assertEquals(2, countQuery.count(queryFactory, teamA));
+
+        Team team = em.find(Team.class, memberRepository.search(teamA).get(0).getTeamId());
+        em.persist(new Member("member6", 60, team));
+        em.flush();
+
+        assertEquals(5, countQuery.count(queryFactory, all)); //threshold 이상은 ttl 동안 재사용
+        assertEquals(3, countQuery.count(queryFactory, teamA)); //threshold 미만은 항상 정확하게
+    }
+}
@@ -0,0 +1,124 @@
+package study.querydsl.repository;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * 검색 조건별로 Querydsl 이 실제로 만든 SQL 의 실행계획이 인덱스를 타는지 확인 (member 100만건)
+ * SQL 은 StatementInspector 로 가로채서 같은 파라미터로 explain 한다.
+ * 100만건은 클래스 시작 때 한번만 넣고 끝나면 지운다. (롤백하지 않으므로 id 는 시퀀스와 겹치지 않게)
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+        "study.querydsl.repository.MemberIndexExplainTest$SqlCapture")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MemberIndexExplainTest {
+
+    static final int ROWS = 1_000_000;
+    static final long ID_OFFSET = 100_000_000L; //시퀀스로 만든 id 와 겹치지 않게
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+    @Autowired
+    MemberRepository memberRepository;
+
+    @BeforeAll
+    public void seed() {
+        jdbcTemplate.update("insert into team (team_id, name) select x + ?, concat('team', x) from system_range(1, 100)",
+                ID_OFFSET);
+        jdbcTemplate.update("insert into member (member_id, username, age, team_id)" +
+                        " select x + ?, concat('member', x), mod(x, 100), mod(x, 100) + 1 + ? from system_range(1, ?)",
+                ID_OFFSET, ID_OFFSET, ROWS);
+    }
+
+    @AfterAll
+    public void cleanUp() {
+        jdbcTemplate.update("delete from member where member_id > ?", ID_OFFSET);
+        jdbcTemplate.update("delete from team where team_id > ?", ID_OFFSET);
+    }
+
+    @Test
+    public void username() {
+        String plan = explainSearch(condition("member15", null, null, null), "member15");
+        assertThat(plan).containsIgnoringCase("left outer join");
+        assertThat(plan).containsIgnoringCase("idx_member_username");
+        //left join 의 팀 조회는 PK 로
+        assertThat(plan).containsIgnoringCase("primary_key");
+    }
+
+    @Test
+    public void ageRange() {
+        assertThat(explainSearch(condition(null, null, 20, 21), 20, 21))
+                .containsIgnoringCase("idx_member_age_id");
+    }
+
+    @Test
+    public void usernameAndAge() {
+        assertThat(explainSearch(condition("member15", null, 10, null), "member15", 10))
+                .containsIgnoringCase("idx_member_username");
+    }
+
+    @Test
+    public void teamNameAndAge() {
+        //inner join 이라 팀 이름으로 팀을 먼저 찾고 (team_id, age) 인덱스로 회원을 찾는다.
+        String plan = explainSearch(condition(null, "team5", 20, null), "team5", 20);
+        assertThat(plan).doesNotContainIgnoringCase("left outer join");
+        assertThat(plan).containsIgnoringCase("idx_team_name");
+        assertThat(plan).containsIgnoringCase("idx_member_team_age");
+    }
+
+    @Test
+    public void teamName() {
+        String plan = explainSearch(condition(null, "team7", null, null), "team7");
+        assertThat(plan).doesNotContainIgnoringCase("left outer join");
+        assertThat(plan).containsIgnoringCase("idx_team_name");
+    }
+
+    /**
+     * 검색을 실제로 실행해서 나간 SQL 을 바인딩 값과 함께 explain 한다.
+     * 바인딩 순서는 MemberSearchPredicates 의 조건 순서 (username, teamName, ageGoe, ageLoe)
+     */
+    private String explainSearch(MemberSearchCondition condition, Object... args) {
+        SqlCapture.SQL.clear();
+        assertThat(memberRepository.search(condition)).isNotEmpty();
+        String sql = SqlCapture.SQL.stream()
+                .filter(s -> s.contains(" from member "))
+                .reduce((first, second) -> second)
+                .orElseThrow(() -> new AssertionError("검색 SQL 이 실행되지 않았습니다: " + SqlCapture.SQL));
+        return jdbcTemplate.queryForObject("explain " + sql, String.class, args);
+    }
+
+    private MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+
+    /**
+     * Hibernate 가 JDBC 로 보내기 직전의 SQL 을 모은다. (이 테스트 컨텍스트에서만 등록)
+     */
+    public static class SqlCapture implements StatementInspector {
+
+        static final List<String> SQL = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            SQL.add(sql);
+            return sql;
+        }
+    }
+}
@@ -12,6 +12,8 @@ import study.querydsl.entity.Team;
 import javax.persistence.EntityManager;
 
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -87,4 +89,51 @@ class MemberJpaRepositoryTest {
         assertNotEquals(0, result.size());
 
     }
+
+    /**
+     * 두 방식이 같은 조인을 쓰므로 팀 없는 회원도 같게 처리된다.
+     */
+    @Test
+    public void builderSameAsWhereParam() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30));
+
+        MemberSearchCondition noTeamCondition = new MemberSearchCondition();
+        noTeamCondition.setAgeGoe(10);
+        MemberSearchCondition teamCondition = new MemberSearchCondition();
+        teamCondition.setTeamName("teamA");
+        teamCondition.setAgeGoe(10);
+
+        for (MemberSearchCondition condition : List.of(noTeamCondition, teamCondition)) {
+            assertEquals(memberJpaRepository.searchByWhereParam(condition), memberJpaRepository.searchByBuilder(condition));
+        }
+        assertTrue(memberJpaRepository.searchByBuilder(noTeamCondition).stream().anyMatch(dto -> dto.getTeamId() == null));
+    }
+
+    @Test
+    public void searchStreamTest() {
+
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+
+        List<MemberTeamDto> result;
+        try (Stream<MemberTeamDto> stream = memberJpaRepository.searchStream(condition, 2)) {
+            result = stream.collect(Collectors.toList());
+        }
+        assertEquals(2, result.size());
+        assertEquals(memberJpaRepository.search(condition).size(), result.size());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,154 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class MemberRankingRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    MemberRankingRepository memberRankingRepository;
+
+    Team teamA;
+    Team teamB;
+
+    @BeforeEach
+    public void before() {
+        teamA = new Team("rankingTeamA");
+        teamB = new Team("rankingTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 20, teamA));
+        em.persist(new Member("member3", 30, teamA));
+        em.persist(new Member("member4", 40, teamB));
+        em.persist(new Member("member5", 40, teamB));
+        em.persist(new Member("member6", 50, teamB));
+        em.persist(new Member("member7", 100)); //팀 없는 회원은 대상이 아니다.
+
+        em.flush(); //네이티브 쿼리 전에 반영
+    }
+
+    @Test
+    public void topByTeam() {
+        List<String> result = usernames(memberRankingRepository.findTopByTeam(2));
+
+        //나이가 같으면 먼저 저장된 회원
+        assertEquals(List.of("member3", "member2", "member6", "member4"), result);
+    }
+
+    @Test
+    public void topByTeamLimit() {
+        assertThrows(InvalidSearchRequestException.class, () -> memberRankingRepository.findTopByTeam(0));
+        assertThrows(InvalidSearchRequestException.class, () -> memberRankingRepository.findTopByTeam(MemberRankingRepository.MAX_LIMIT + 1));
+    }
+
+    /**
+     * 팀 수 x limit 이 MAX_ROWS 를 넘지 않도록 MAX_ROWS / limit 개 팀씩 끊어서 돌려준다.
+     */
+    @Test
+    public void topByTeamBoundedByRows() {
+        int teamsPerCall = MemberRankingRepository.MAX_ROWS / MemberRankingRepository.MAX_LIMIT;
+        List<Long> ours = new ArrayList<>(List.of(teamA.getId(), teamB.getId()));
+        for (int i = 0; i < teamsPerCall; i++) {
+            Team extra = new Team("rankingExtra" + i);
+            em.persist(extra);
+            em.persist(new Member("extra" + i, i, extra));
+            ours.add(extra.getId());
+        }
+        em.flush();
+
+        assertEquals(teamsPerCall, teamIds(memberRankingRepository.findTopByTeam(MemberRankingRepository.MAX_LIMIT)).size());
+
+        //마지막 팀 id 를 넘기면서 끝까지 조회하면 모든 팀이 한번씩 나온다.
+        List<Long> seen = new ArrayList<>();
+        Long afterTeamId = null;
+        List<MemberTeamDto> rows;
+        while (!(rows = memberRankingRepository.findTopByTeam(MemberRankingRepository.MAX_LIMIT, afterTeamId)).isEmpty()) {
+            assertTrue(teamIds(rows).size() <= teamsPerCall);
+            assertTrue(rows.size() <= MemberRankingRepository.MAX_ROWS);
+            seen.addAll(teamIds(rows));
+            afterTeamId = rows.get(rows.size() - 1).getTeamId();
+        }
+        assertEquals(seen.size(), seen.stream().distinct().count());
+        assertTrue(seen.containsAll(ours));
+    }
+
+    /**
+     * QueryDslBasicTest.subQueryGoe 를 팀 단위 상관 서브쿼리로 바꾼 결과와 같아야 한다.
+     */
+    @Test
+    public void aboveTeamAverage() {
+        QMember memberSub = new QMember("memberSub");
+        List<MemberTeamDto> subQuery = queryFactory
+                .select(new QMemberTeamDto(member.id, member.username, member.age, team.id, team.name))
+                .from(member)
+                .join(member.team, team)
+                .where(team.in(teamA, teamB),
+                        member.age.gt(JPAExpressions
+                                .select(memberSub.age.avg())
+                                .from(memberSub)
+                                .where(memberSub.team.eq(member.team))))
+                .orderBy(team.id.asc(), member.age.desc(), member.id.asc())
+                .fetch();
+
+        List<String> result = usernames(memberRankingRepository.findAboveTeamAverage(MemberRankingRepository.MAX_ROWS));
+
+        assertEquals(List.of("member3", "member6"), result);
+        assertEquals(usernames(subQuery), result);
+    }
+
+    @Test
+    public void aboveTeamAverageLimit() {
+        List<MemberTeamDto> all = memberRankingRepository.findAboveTeamAverage(MemberRankingRepository.MAX_ROWS);
+
+        //앞에서부터 limit 명 (팀 id, 나이 내림차순, id 순서 유지)
+        assertEquals(all.subList(0, 1), memberRankingRepository.findAboveTeamAverage(1));
+        assertEquals(all.subList(0, all.size() - 1), memberRankingRepository.findAboveTeamAverage(all.size() - 1));
+        assertEquals(all, memberRankingRepository.findAboveTeamAverage(all.size()));
+
+        assertThrows(InvalidSearchRequestException.class, () -> memberRankingRepository.findAboveTeamAverage(0));
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRankingRepository.findAboveTeamAverage(MemberRankingRepository.MAX_ROWS + 1));
+    }
+
+    //다른 테스트에서 커밋한 데이터는 빼고 본다.
+    private List<String> usernames(List<MemberTeamDto> members) {
+        return members.stream()
+                .filter(dto -> dto.getTeamId().equals(teamA.getId()) || dto.getTeamId().equals(teamB.getId()))
+                .map(MemberTeamDto::getUsername)
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> teamIds(List<MemberTeamDto> rows) {
+        return rows.stream().map(MemberTeamDto::getTeamId).distinct().collect(Collectors.toList());
+    }
+}
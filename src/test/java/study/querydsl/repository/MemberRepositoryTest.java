@@ -1,12 +1,18 @@
 package study.querydsl.repository;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberCursorSlice;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
@@ -14,6 +20,7 @@ import study.querydsl.entity.QMember;
 import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
@@ -30,6 +37,12 @@ class MemberRepositoryTest {
     @Autowired
     MemberRepository memberRepository;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
     @Test
     public void basicTest() {
 
@@ -104,6 +117,151 @@ class MemberRepositoryTest {
 
     }
 
+    @Test
+    public void searchSliceTest() {
+
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+
+        em.persist(new Member("member1", 10, teamA));
+        em.persist(new Member("member2", 10, teamA));
+        em.persist(new Member("member3", 20, teamA));
+        em.persist(new Member("member4", 30, teamA));
+        em.persist(new Member("member5", 40, teamA));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        MemberCursorSlice first = memberRepository.searchSlice(condition, null, 2);
+        assertThat(first.getContent()).extracting("username").containsExactly("member1", "member2");
+        assertTrue(first.isHasNext());
+
+        MemberCursorSlice second = memberRepository.searchSlice(condition, first.getNextCursor(), 2);
+        assertThat(second.getContent()).extracting("username").containsExactly("member3", "member4");
+        assertTrue(second.isHasNext());
+
+        MemberCursorSlice last = memberRepository.searchSlice(condition, second.getNextCursor(), 2);
+        assertThat(last.getContent()).extracting("username").containsExactly("member5");
+        assertFalse(last.isHasNext());
+        assertNull(last.getNextCursor());
+    }
+
+    @Test
+    public void searchSliceSizeTest() {
+        em.persist(new Member("member1", 10));
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        assertThrows(InvalidSearchRequestException.class, () -> memberRepository.searchSlice(condition, null, 0));
+        assertThrows(InvalidSearchRequestException.class, () -> memberRepository.searchSlice(condition, null, -1));
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchSlice(condition, null, MemberRepositoryImpl.MAX_SLICE_SIZE + 1));
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchSlice(condition, null, Integer.MAX_VALUE));
+
+        assertFalse(memberRepository.searchSlice(condition, null, 1).getContent().isEmpty());
+        assertFalse(memberRepository.searchSlice(condition, null, MemberRepositoryImpl.MAX_SLICE_SIZE).getContent().isEmpty());
+    }
+
+    @Test
+    public void searchPageNoCountTest() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 1; i <= 5; i++) {
+            em.persist(new Member("member" + i, i * 10, teamA));
+        }
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        Slice<MemberTeamDto> first = memberRepository.searchPageNoCount(condition, PageRequest.of(0, 2));
+        assertEquals(2, first.getNumberOfElements());
+        assertTrue(first.hasNext());
+
+        Slice<MemberTeamDto> last = memberRepository.searchPageNoCount(condition, PageRequest.of(2, 2));
+        assertEquals(1, last.getNumberOfElements());
+        assertFalse(last.hasNext());
+    }
+
+    @Test
+    public void deferredJoinTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 7; i++) {
+            em.persist(new Member("member" + i, i * 10, i % 2 == 0 ? teamA : teamB));
+        }
+        em.persist(new Member("member8", 80));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamB");
+        condition.setAgeGoe(20);
+
+        List<MemberTeamDto> deferred = new ArrayList<>();
+        for (int page = 0; page < 3; page++) {
+            Page<MemberTeamDto> result = memberRepository.searchPageComplex(condition, PageRequest.of(page, 1), PageStrategy.DEFERRED_JOIN);
+            assertEquals(3, result.getTotalElements());
+            deferred.addAll(result.getContent());
+        }
+
+        //member_id 순서로 잘리고, 프로젝션 결과는 offset 방식과 같다.
+        assertThat(deferred).extracting("username").containsExactly("member3", "member5", "member7");
+        assertThat(deferred).containsExactlyInAnyOrderElementsOf(
+                memberRepository.searchPageSimple(condition, PageRequest.of(0, 10), PageStrategy.OFFSET).getContent());
+        assertThat(memberRepository.searchPageSimple(condition, PageRequest.of(3, 1), PageStrategy.DEFERRED_JOIN).getContent()).isEmpty();
+    }
+
+    @Test
+    public void sortTest() {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        em.persist(new Member("member1", 20, teamB));
+        em.persist(new Member("member2", 10, teamA));
+        em.persist(new Member("member3", 20, teamA));
+        em.persist(new Member("member4", 30, teamB));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        //같은 나이는 member_id 로 (같은 방향)
+        Page<MemberTeamDto> byAgeDesc = memberRepository.searchPageComplex(condition, PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "age")));
+        assertThat(byAgeDesc.getContent()).extracting("username").containsExactly("member4", "member3", "member1", "member2");
+
+        Page<MemberTeamDto> byTeamAndAge = memberRepository.searchPageSimple(condition, PageRequest.of(0, 10, Sort.by("teamId", "age")), PageStrategy.DEFERRED_JOIN);
+        assertThat(byTeamAndAge.getContent()).extracting("username").containsExactly("member2", "member3", "member1", "member4");
+
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 10, Sort.by("teamName"))));
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 10, Sort.by("age", "username"))));
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchPageComplex(condition, PageRequest.of(0, 10, Sort.by(Sort.Order.asc("teamId"), Sort.Order.desc("age")))));
+    }
+
+    @Test
+    public void searchMetricsTest() {
+        em.persist(new Member("member1", 10));
+
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername("member1");
+        memberRepository.searchPageSimple(condition, PageRequest.of(0, 10));
+
+        Timer timer = meterRegistry.find("member.search")
+                .tag("method", "MemberRepositoryImpl.searchPageSimple")
+                .tag("shape", "username")
+                .timer();
+        assertNotNull(timer);
+        assertTrue(timer.count() >= 1);
+        assertNotNull(meterRegistry.find("member.search.count.time")
+                .tag("method", "MemberRepositoryImpl.searchPageSimple")
+                .timer());
+        assertTrue(timer.takeSnapshot().histogramCounts().length == 0);
+
+        //search 가 아닌 메서드는 기록하지 않는다.
+        memberJpaRepository.findAll();
+        assertNull(meterRegistry.find("member.search").tag("method", "MemberJpaRepository.findAll").timer());
+    }
+
     @Test
     public void querydslPredicateExcutorTest() {
         Iterable<Member> member = memberRepository.findAll(
@@ -0,0 +1,66 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberSearchCacheTest {
+
+    MemberSearchCache cache = new MemberSearchCache(true, 100, Duration.ofMinutes(1), Duration.ofSeconds(5));
+
+    @Test
+    public void hitAndInvalidate() {
+        AtomicInteger loadCount = new AtomicInteger();
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+        condition.setAgeGoe(20);
+
+        cache.get("search", condition, Pageable.unpaged(), () -> List.of(loadCount.incrementAndGet()));
+
+        //같은 값의 다른 condition 객체도 같은 키
+        MemberSearchCondition sameCondition = new MemberSearchCondition();
+        sameCondition.setTeamName("teamA");
+        sameCondition.setAgeGoe(20);
+        cache.get("search", sameCondition, Pageable.unpaged(), () -> List.of(loadCount.incrementAndGet()));
+        assertEquals(1, loadCount.get());
+        assertEquals(1, cache.stats().hitCount());
+
+        //페이지가 다르면 다른 키
+        cache.get("search", condition, PageRequest.of(1, 10), () -> List.of(loadCount.incrementAndGet()));
+        assertEquals(2, loadCount.get());
+
+        cache.onWrite();
+        cache.get("search", condition, Pageable.unpaged(), () -> List.of(loadCount.incrementAndGet()));
+        assertEquals(3, loadCount.get());
+    }
+
+    @Test
+    public void cachedResultIsReadOnly() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        List<Integer> loaded = cache.get("search", condition, Pageable.unpaged(), () -> new ArrayList<>(List.of(1, 2)));
+        List<Integer> cached = cache.get("search", condition, Pageable.unpaged(), () -> new ArrayList<>(List.of(3)));
+
+        assertEquals(List.of(1, 2), cached);
+        assertThrows(UnsupportedOperationException.class, () -> loaded.add(3));
+        assertThrows(UnsupportedOperationException.class, () -> cached.clear());
+    }
+
+    @Test
+    public void writeSqlDetection() {
+        assertTrue(MemberSearchCacheInvalidator.WRITE_SQL.matcher(
+                "/* insert study.querydsl.entity.Member */ insert into member (age, team_id, username, member_id) values (?, ?, ?, ?)").find());
+        assertTrue(MemberSearchCacheInvalidator.WRITE_SQL.matcher(
+                "/* update Member member1\nset member1.age = member1.age + ?1 */ update member set age=age+?").find());
+        assertTrue(MemberSearchCacheInvalidator.WRITE_SQL.matcher("delete from team where team_id=?").find());
+        assertFalse(MemberSearchCacheInvalidator.WRITE_SQL.matcher("select member0_.member_id from member member0_").find());
+        assertFalse(MemberSearchCacheInvalidator.WRITE_SQL.matcher("insert into hello (id) values (?)").find());
+    }
+}
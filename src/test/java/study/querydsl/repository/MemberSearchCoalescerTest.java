@@ -0,0 +1,165 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemberSearchCoalescerTest {
+
+    MeterRegistry registry = new SimpleMeterRegistry();
+    MemberSearchCache cache = new MemberSearchCache(false, 100, Duration.ofMinutes(1), Duration.ofSeconds(5));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    public void after() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    MemberSearchCoalescer coalescer(Duration maxWait) {
+        return new MemberSearchCoalescer(cache,
+                new StaticListableBeanFactory(Map.of("registry", registry)).getBeanProvider(MeterRegistry.class),
+                true, maxWait);
+    }
+
+    @Test
+    public void concurrentSameSearchRunsOnce() throws Exception {
+        MemberSearchCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName("teamA");
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loadCount = new AtomicInteger();
+        List<Future<List<Integer>>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> coalescer.execute("searchPageComplex", condition, PageRequest.of(0, 10), () -> {
+                int loaded = loadCount.incrementAndGet();
+                await(release);
+                return List.of(loaded);
+            })));
+        }
+        //leader 가 조회 중인 동안 나머지 7개가 모두 합류할 때까지 대기
+        awaitWaiting(coalescer, 7);
+        release.countDown();
+
+        for (Future<List<Integer>> result : results) {
+            assertEquals(List.of(1), result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loadCount.get());
+        assertEquals(7, registry.counter("member.search.coalesce", "method", "searchPageComplex", "result", "collapsed").count());
+        assertEquals(0, coalescer.inFlightSize());
+    }
+
+    @Test
+    public void waitIsBounded() throws Exception {
+        MemberSearchCoalescer coalescer = coalescer(Duration.ofMillis(50));
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> slow = executor.submit(() -> coalescer.execute("search", condition, PageRequest.of(0, 10), () -> {
+            started.countDown();
+            await(release);
+            return "leader";
+        }));
+        started.await();
+
+        //leader 가 끝나지 않아도 max-wait 이후 직접 조회
+        String result = coalescer.execute("search", condition, PageRequest.of(0, 10), () -> "own");
+        assertEquals("own", result);
+        assertEquals(1, registry.counter("member.search.coalesce", "method", "search", "result", "timeout").count());
+
+        release.countDown();
+        assertEquals("leader", slow.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void writeDetachesInFlightSearch() throws Exception {
+        MemberSearchCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> before = executor.submit(() -> coalescer.execute("search", condition, PageRequest.of(0, 10), () -> {
+            started.countDown();
+            await(release);
+            return "beforeWrite";
+        }));
+        started.await();
+
+        coalescer.onWrite();
+        assertEquals("afterWrite", coalescer.execute("search", condition, PageRequest.of(0, 10), () -> "afterWrite"));
+
+        release.countDown();
+        assertEquals("beforeWrite", before.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void followerRetriesWhenLeaderFails() throws Exception {
+        MemberSearchCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> coalescer.execute("search", condition, PageRequest.of(0, 10), () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("leader 요청의 예외");
+        }));
+        started.await();
+
+        Future<String> follower = executor.submit(() -> coalescer.execute("search", condition, PageRequest.of(0, 10), () -> "own"));
+        //follower 가 합류할 때까지 대기
+        awaitWaiting(coalescer, 1);
+        release.countDown();
+
+        ExecutionException leaderFailure = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertTrue(leaderFailure.getCause() instanceof IllegalStateException);
+        //leader 의 예외를 나눠 받지 않고 직접 조회한다.
+        assertEquals("own", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, registry.counter("member.search.coalesce", "method", "search", "result", "retry").count());
+    }
+
+    @Test
+    public void resultIsReadOnly() {
+        MemberSearchCoalescer coalescer = coalescer(Duration.ofSeconds(5));
+        List<Integer> result = coalescer.execute("search", new MemberSearchCondition(), PageRequest.of(0, 10),
+                () -> new ArrayList<>(List.of(1, 2)));
+
+        assertThrows(UnsupportedOperationException.class, () -> result.add(3));
+    }
+
+    private static void awaitWaiting(MemberSearchCoalescer coalescer, int followers) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.waitingSize() < followers) {
+            assertTrue(System.nanoTime() < deadline, "follower " + followers + "개가 합류하지 않음");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 인덱스는 커밋된 데이터만 반영하므로 롤백 테스트(@Transactional) 대신 직접 커밋하고 지운다.
+ */
+@SpringBootTest(properties = "member.search-index.enabled=true")
+class MemberSearchIndexTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberSearchIndex memberSearchIndex;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    List<Long> memberIds = new ArrayList<>();
+    List<Long> teamIds = new ArrayList<>();
+
+    @BeforeEach
+    public void before() throws InterruptedException {
+        awaitReady();
+        transactionTemplate.executeWithoutResult(status -> {
+            Team teamA = new Team("indexTeamA");
+            Team teamB = new Team("indexTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            teamIds.add(teamA.getId());
+            teamIds.add(teamB.getId());
+            for (int i = 0; i < 20; i++) {
+                Member member = new Member("indexMember" + i, i * 5, i % 3 == 0 ? null : i % 2 == 0 ? teamA : teamB);
+                em.persist(member);
+                memberIds.add(member.getId());
+            }
+        });
+    }
+
+    @AfterEach
+    public void after() {
+        transactionTemplate.executeWithoutResult(status -> {
+            memberIds.forEach(id -> em.remove(em.find(Member.class, id)));
+            teamIds.forEach(id -> em.remove(em.find(Team.class, id)));
+        });
+    }
+
+    @Test
+    public void overlaySameAsDatabase() {
+        assertSameAsDatabase();
+    }
+
+    @Test
+    public void changesAfterSnapshot() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Member member = em.find(Member.class, memberIds.get(0));
+            member.changeTeam(em.find(Team.class, teamIds.get(1)));
+            em.remove(em.find(Member.class, memberIds.remove(1)));
+        });
+        assertSameAsDatabase();
+    }
+
+    @Test
+    public void snapshotSameAsDatabase() throws InterruptedException {
+        memberSearchIndex.beginBulk();
+        assertFalse(memberSearchIndex.search(new MemberSearchCondition()).isPresent()); //벌크 중에는 DB 로
+
+        memberSearchIndex.endBulk();
+        awaitReady();
+        assertSameAsDatabase();
+    }
+
+    /**
+     * 엔티티 이벤트가 없는 JPQL 벌크 update, native SQL 도 p6spy 감지로 스냅샷을 다시 만든다.
+     */
+    @Test
+    public void externalWriteRebuildsSnapshot() throws InterruptedException {
+        transactionTemplate.executeWithoutResult(status -> em
+                .createQuery("update Member m set m.age = m.age + 1 where m.username like 'indexMember%'")
+                .executeUpdate());
+        awaitReady();
+        assertSameAsDatabase();
+
+        jdbcTemplate.update("update member set age = age + 1 where username like 'indexMember%'");
+        awaitReady();
+        assertSameAsDatabase();
+    }
+
+    /**
+     * SQL 로 바뀐 팀 이름은 재생성할 때 DB 에서 읽은 이름을 쓴다. (예전 이름이 남지 않는다)
+     */
+    @Test
+    public void externalTeamRenameRebuildsTeamNames() throws InterruptedException {
+        jdbcTemplate.update("update team set name = 'indexTeamRenamed' where team_id = ?", teamIds.get(0));
+        awaitReady();
+
+        MemberSearchCondition renamed = new MemberSearchCondition();
+        renamed.setTeamName("indexTeamRenamed");
+        List<MemberTeamDto> indexed = memberSearchIndex.search(renamed).orElseThrow();
+        assertThat(indexed).isNotEmpty().allMatch(dto -> dto.getTeamName().equals("indexTeamRenamed"));
+        assertThat(indexed).containsExactlyInAnyOrderElementsOf(memberRepository.search(renamed));
+
+        MemberSearchCondition oldName = new MemberSearchCondition();
+        oldName.setTeamName("indexTeamA");
+        assertThat(memberSearchIndex.search(oldName).orElseThrow()).isEmpty();
+        assertThat(memberRepository.search(oldName)).isEmpty();
+    }
+
+    private void assertSameAsDatabase() {
+        for (MemberSearchCondition condition : conditions()) {
+            List<MemberTeamDto> indexed = memberSearchIndex.search(condition).orElseThrow();
+            List<MemberTeamDto> database = memberRepository.search(condition);
+            assertThat(indexed).as(condition.toString()).containsExactlyInAnyOrderElementsOf(database);
+        }
+    }
+
+    private List<MemberSearchCondition> conditions() {
+        List<MemberSearchCondition> conditions = new ArrayList<>();
+        conditions.add(new MemberSearchCondition());
+
+        MemberSearchCondition username = new MemberSearchCondition();
+        username.setUsername("indexMember4");
+        conditions.add(username);
+
+        MemberSearchCondition teamName = new MemberSearchCondition();
+        teamName.setTeamName("indexTeamB");
+        conditions.add(teamName);
+
+        MemberSearchCondition ageRange = new MemberSearchCondition();
+        ageRange.setAgeGoe(20);
+        ageRange.setAgeLoe(60);
+        conditions.add(ageRange);
+
+        MemberSearchCondition all = new MemberSearchCondition();
+        all.setTeamName("indexTeamA");
+        all.setAgeGoe(10);
+        all.setAgeLoe(80);
+        conditions.add(all);
+        return conditions;
+    }
+
+    private void awaitReady() throws InterruptedException {
+        for (int i = 0; i < 100 && !memberSearchIndex.isReady(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(memberSearchIndex.isReady());
+    }
+}
@@ -0,0 +1,197 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.InvalidSearchRequestException;
+import study.querydsl.dto.MemberCursorSlice;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.service.MemberExportService;
+
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * in-memory H2 3개를 샤드로 쓴다.
+ */
+@SpringBootTest(properties = {
+        "member.shard.enabled=true",
+        "member.shard.ddl-auto=create",
+        "member.shard.shards[0].url=jdbc:h2:mem:shard0;DB_CLOSE_DELAY=-1",
+        "member.shard.shards[0].username=sa",
+        "member.shard.shards[1].url=jdbc:h2:mem:shard1;DB_CLOSE_DELAY=-1",
+        "member.shard.shards[1].username=sa",
+        "member.shard.shards[2].url=jdbc:h2:mem:shard2;DB_CLOSE_DELAY=-1",
+        "member.shard.shards[2].username=sa",
+        "member.shard.max-offset=30",
+        "member.team-stats.reconcile.enabled=false"
+})
+class MemberShardsTest {
+
+    @Autowired
+    MemberShards shards;
+
+    @Autowired
+    MemberRepository memberRepository;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    @Autowired
+    MemberExportService memberExportService;
+
+    @Autowired
+    MemberBulkOperations memberBulkOperations;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    List<MemberTeamDto> all = new ArrayList<>();
+
+    @BeforeEach
+    public void before() throws SQLException {
+        for (int i = 0; i < shards.size(); i++) {
+            try (Connection con = DriverManager.getConnection("jdbc:h2:mem:shard" + i, "sa", "");
+                 Statement stmt = con.createStatement()) {
+                stmt.execute("delete from member");
+                stmt.execute("delete from team");
+            }
+        }
+
+        List<Team> teams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            teams.add(shards.saveTeam("team" + i));
+        }
+        for (int i = 0; i < 30; i++) {
+            Team team = teams.get(i % 4);
+            Member member = shards.saveMember("member" + i, i % 7 * 10, team.getId());
+            all.add(new MemberTeamDto(member.getId(), member.getUsername(), member.getAge(), team.getId(), team.getName()));
+        }
+        Member noTeam = shards.saveMember("noTeam", 35, null);
+        all.add(new MemberTeamDto(noTeam.getId(), "noTeam", 35, null, null));
+    }
+
+    @Test
+    public void partitionedByTeam() {
+        List<Long> counts = shards.scatter(em -> em.createQuery("select count(m) from Member m", Long.class).getSingleResult());
+        assertThat(counts).allMatch(count -> count > 0);
+        assertEquals(all.size(), counts.stream().mapToLong(Long::longValue).sum());
+
+        //member 는 소속 team 과 같은 샤드, id 는 샤드끼리 겹치지 않는다.
+        for (MemberTeamDto row : all) {
+            assertEquals(shards.shardOf(row.getTeamId()), Math.floorMod(row.getMemberId(), shards.size()));
+        }
+        assertEquals(all.size(), all.stream().map(MemberTeamDto::getMemberId).distinct().count());
+    }
+
+    @Test
+    public void scatterGatherSearch() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(20);
+        assertThat(memberRepository.search(condition))
+                .containsExactlyInAnyOrderElementsOf(all.stream().filter(row -> row.getAge() >= 20).collect(Collectors.toList()));
+
+        condition.setTeamName("team1");
+        assertThat(memberRepository.search(condition))
+                .containsExactlyInAnyOrderElementsOf(all.stream()
+                        .filter(row -> row.getAge() >= 20 && "team1".equals(row.getTeamName()))
+                        .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void mergedPages() {
+        MemberSearchCondition condition = new MemberSearchCondition();
+
+        assertPages(condition, Sort.unsorted(), Comparator.comparing(MemberTeamDto::getMemberId));
+        assertPages(condition, Sort.by(Sort.Direction.DESC, "age"),
+                Comparator.comparing(MemberTeamDto::getAge).thenComparing(MemberTeamDto::getMemberId).reversed());
+        assertPages(condition, Sort.by("teamId", "age"),
+                Comparator.comparing(MemberTeamDto::getTeamId, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(MemberTeamDto::getAge)
+                        .thenComparing(MemberTeamDto::getMemberId));
+    }
+
+    @Test
+    public void mergedCursorSlices() {
+        List<MemberTeamDto> merged = new ArrayList<>();
+        String cursor = null;
+        MemberCursorSlice slice;
+        do {
+            slice = memberRepository.searchSlice(new MemberSearchCondition(), cursor, 4);
+            merged.addAll(slice.getContent());
+            cursor = slice.getNextCursor();
+        } while (slice.isHasNext());
+
+        assertThat(merged).containsExactlyElementsOf(sorted(Comparator.comparing(MemberTeamDto::getAge).thenComparing(MemberTeamDto::getMemberId)));
+    }
+
+    @Test
+    public void offsetLimited() {
+        //샤드마다 offset + size 개를 읽으므로 max-offset 보다 깊은 페이지는 거절 -> cursor 페이징
+        assertThrows(InvalidSearchRequestException.class,
+                () -> memberRepository.searchPageSimple(new MemberSearchCondition(), PageRequest.of(8, 4)));
+    }
+
+    @Test
+    public void teamStatsAndExportFromShards() throws IOException {
+        List<TeamStatsDto> stats = teamStatsRepository.findAll();
+        assertThat(stats).extracting("teamName").containsExactly("team0", "team1", "team2", "team3");
+        assertEquals(30, stats.stream().mapToLong(TeamStatsDto::getMemberCount).sum());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(all.size(), memberExportService.export(new MemberSearchCondition(), out));
+        assertEquals(all.size(), out.toString(StandardCharsets.UTF_8).lines().count());
+    }
+
+    @Test
+    public void defaultDataSourceWritesRejected() {
+        assertThrows(IllegalStateException.class, () -> memberBulkOperations.delete(member.age.goe(0), progress -> {
+        }));
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status ->
+                em.persist(new Team("defaultTeam"))));
+    }
+
+    private void assertPages(MemberSearchCondition condition, Sort sort, Comparator<MemberTeamDto> expectedOrder) {
+        List<MemberTeamDto> merged = new ArrayList<>();
+        for (int page = 0; page * 4 < all.size(); page++) {
+            Page<MemberTeamDto> result = memberRepository.searchPageSimple(condition, PageRequest.of(page, 4, sort));
+            assertEquals(all.size(), result.getTotalElements());
+            merged.addAll(result.getContent());
+        }
+        assertThat(merged).as(sort.toString()).containsExactlyElementsOf(sorted(expectedOrder));
+
+        Page<MemberTeamDto> complex = memberRepository.searchPageComplex(condition, PageRequest.of(3, 5, sort));
+        assertThat(complex.getContent()).containsExactlyElementsOf(sorted(expectedOrder).subList(15, 20));
+        assertEquals(all.size(), complex.getTotalElements());
+    }
+
+    private List<MemberTeamDto> sorted(Comparator<MemberTeamDto> order) {
+        return all.stream().sorted(order).collect(Collectors.toList());
+    }
+}
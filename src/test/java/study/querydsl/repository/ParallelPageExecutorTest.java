@@ -0,0 +1,79 @@
+package study.querydsl.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.metrics.SqlStatementBudget;
+import study.querydsl.metrics.SqlStatementCounter;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest(properties = "member.search.parallel-count.enabled=true")
+@Transactional
+class ParallelPageExecutorTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    ParallelPageExecutor parallelPageExecutor;
+
+    @Autowired
+    SqlStatementBudget sqlStatementBudget;
+
+    /**
+     * content 는 호출한 트랜잭션의 영속성 컨텍스트에서, count 는 별도 스레드의 read-only 트랜잭션에서 실행된다.
+     * -> 요청당 커넥션은 호출한 트랜잭션 것 + count 용 1개
+     */
+    @Test
+    public void contentOnCallerEntityManager() {
+        Member member = new Member("member1", 10);
+        em.persist(member);
+        em.flush();
+
+        Page<Boolean> page = parallelPageExecutor.getPage(PageRequest.of(0, 1),
+                contentEm -> List.of(contentEm.contains(member)),
+                countEm -> countEm.contains(member) ? -1L : 5L);
+
+        assertThat(page.getContent()).containsExactly(true);
+        assertThat(page.getTotalElements()).isEqualTo(5); //한 페이지가 꽉 찼으므로 count 를 사용
+    }
+
+    @Test
+    public void countSkippedOnLastPage() {
+        Page<String> page = parallelPageExecutor.getPage(PageRequest.of(0, 10),
+                contentEm -> List.of("a", "b"),
+                countEm -> 100L);
+
+        assertThat(page.getTotalElements()).isEqualTo(2);
+    }
+
+    /**
+     * count 스레드에서 실행한 SQL 도 호출 스레드의 SQL 수와 예산에 들어간다.
+     */
+    @Test
+    public void countStatementsCountedOnCaller() {
+        sqlStatementBudget.begin("parallel-test");
+        SqlStatementBudget.Scope scope;
+        SqlStatementCounter.Counts before = SqlStatementCounter.snapshot();
+        try {
+            parallelPageExecutor.getPage(PageRequest.of(0, 1),
+                    contentEm -> List.of("a"),
+                    countEm -> countEm.createQuery("select count(m) from Member m", Long.class).getSingleResult());
+        } finally {
+            scope = sqlStatementBudget.end();
+        }
+
+        SqlStatementCounter.Counts counts = SqlStatementCounter.since(before);
+        assertThat(counts.getStatements()).isEqualTo(1);
+        assertThat(counts.getCountQueries()).isEqualTo(1);
+        assertThat(scope.getStatements()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,67 @@
+package study.querydsl.repository;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAttribute;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class ReadOnlyQueryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    /**
+     * save 를 제외한 조회 메서드는 모두 read-only 트랜잭션
+     */
+    @Test
+    public void queryMethodsAreReadOnly() throws NoSuchMethodException {
+        AnnotationTransactionAttributeSource source = new AnnotationTransactionAttributeSource();
+        for (Class<?> type : List.of(MemberJpaRepository.class, MemberRepositoryImpl.class)) {
+            for (Method method : type.getDeclaredMethods()) {
+                if (!Modifier.isPublic(method.getModifiers()) || method.getName().equals("save")) {
+                    continue;
+                }
+                TransactionAttribute attribute = source.getTransactionAttribute(method, type);
+                assertNotNull(attribute, method.toString());
+                assertTrue(attribute.isReadOnly(), method.toString());
+            }
+        }
+        assertTrue(source.getTransactionAttribute(MemberRepository.class.getMethod("findByUsername", String.class), MemberRepository.class).isReadOnly());
+        assertFalse(source.getTransactionAttribute(MemberJpaRepository.class.getMethod("save", Member.class), MemberJpaRepository.class).isReadOnly());
+    }
+
+    /**
+     * 쓰기 트랜잭션 안에서 호출하면 그 트랜잭션에 참여하므로 조회한 엔티티의 변경도 그대로 반영된다.
+     */
+    @Test
+    @Transactional
+    public void joinReadWriteTransaction() {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        em.persist(new Member("member1", 10));
+
+        Member member = memberJpaRepository.findByUsername_Querydsl("member1").get(0);
+        assertFalse(em.unwrap(Session.class).isReadOnly(member));
+        member.changeTeam(teamA);
+        em.flush();
+        em.clear();
+
+        assertEquals("teamA", memberJpaRepository.findByUsername_Querydsl("member1").get(0).getTeam().getName());
+    }
+}
@@ -0,0 +1,133 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.service.TeamStatsReconciler;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+@SpringBootTest
+@Transactional
+class TeamStatsRepositoryTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    JPAQueryFactory queryFactory;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    TeamStatsRepository teamStatsRepository;
+
+    @Autowired
+    TeamStatsReconciler teamStatsReconciler;
+
+    Team teamA;
+    Team teamB;
+    Member member1;
+    Member member2;
+
+    @BeforeEach
+    public void before() {
+        teamA = new Team("statsTeamA");
+        teamB = new Team("statsTeamB");
+        em.persist(teamA);
+        em.persist(teamB);
+
+        member1 = new Member("member1", 10, teamA);
+        member2 = new Member("member2", 20, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(new Member("member3", 30, teamB));
+        em.persist(new Member("member4", 40, teamB));
+    }
+
+    @Test
+    public void insert() {
+        TeamStatsDto statsA = stats(teamA);
+        assertEquals(2, statsA.getMemberCount());
+        assertEquals(30, statsA.getAgeSum());
+        assertEquals(15.0, statsA.getAgeAvg());
+        assertEquals(10, statsA.getMinAge());
+        assertEquals(20, statsA.getMaxAge());
+        assertSameAsGroupBy();
+    }
+
+    @Test
+    public void changeTeamAndRemove() {
+        em.flush();
+        em.clear();
+
+        //teamA 의 최소 나이 회원을 teamB 로, 최대 나이 회원은 삭제
+        em.find(Member.class, member1.getId()).changeTeam(em.getReference(Team.class, teamB.getId()));
+        em.remove(em.find(Member.class, member2.getId()));
+
+        TeamStatsDto statsA = stats(teamA);
+        assertEquals(0, statsA.getMemberCount());
+        assertEquals(0, statsA.getAgeSum());
+        assertNull(statsA.getAgeAvg());
+        assertNull(statsA.getMinAge());
+
+        TeamStatsDto statsB = stats(teamB);
+        assertEquals(3, statsB.getMemberCount());
+        assertEquals(80, statsB.getAgeSum());
+        assertEquals(10, statsB.getMinAge());
+        assertEquals(40, statsB.getMaxAge());
+        assertSameAsGroupBy();
+    }
+
+    @Test
+    public void reconcile() {
+        teamStatsRepository.findAll(); //모아둔 증감 반영
+        jdbcTemplate.update("update team_stats set member_count = 99, max_age = 1 where team_id = ?", teamA.getId());
+
+        assertTrue(teamStatsReconciler.reconcile() >= 1);
+
+        TeamStatsDto statsA = stats(teamA);
+        assertEquals(2, statsA.getMemberCount());
+        assertEquals(20, statsA.getMaxAge());
+        assertSameAsGroupBy();
+    }
+
+    private TeamStatsDto stats(Team team) {
+        return teamStatsRepository.findAll().stream()
+                .filter(stats -> stats.getTeamId().equals(team.getId()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    //QueryDslBasicTest.group() 과 같은 group by 결과와 비교
+    private void assertSameAsGroupBy() {
+        List<Tuple> result = queryFactory
+                .select(team.id, member.count(), member.age.min(), member.age.max())
+                .from(member)
+                .join(member.team, team)
+                .where(team.id.in(teamA.getId(), teamB.getId()))
+                .groupBy(team.id)
+                .fetch();
+
+        for (Tuple tuple : result) {
+            TeamStatsDto stats = stats(tuple.get(team.id).equals(teamA.getId()) ? teamA : teamB);
+            assertEquals(tuple.get(member.count()), stats.getMemberCount());
+            assertEquals(tuple.get(member.age.min()), stats.getMinAge());
+            assertEquals(tuple.get(member.age.max()), stats.getMaxAge());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package study.querydsl.service;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * batch_size 5, chunk 10 으로 작게 적재해본다.
+ * 테스트 트랜잭션 안에서 실행하므로 chunk 트랜잭션은 여기에 참여하고 끝나면 롤백된다.
+ */
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.jdbc.batch_size=5",
+        "member.bulk-load.chunk-size=10"
+})
+@Transactional
+class MemberBulkLoadServiceTest {
+
+    @Autowired
+    MemberBulkLoadService memberBulkLoadService;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Test
+    public void load() {
+        long teamsBefore = count("Team");
+        long membersBefore = count("Member");
+        Statistics statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        long flushesBefore = statistics.getFlushCount();
+
+        MemberBulkLoadService.Result result = memberBulkLoadService.load(5, 23);
+
+        //팀 5건에서 1번, 회원 chunk [0,10) [10,20) 에서 2번씩. 마지막 chunk 3건은 batch 가 차지 않았다.
+        assertEquals(5, statistics.getFlushCount() - flushesBefore);
+        //batch 마다 clear 해서 영속성 컨텍스트에는 마지막 3건만 남는다.
+        assertEquals(3, em.unwrap(Session.class).getStatistics().getEntityCount());
+
+        assertEquals(5, result.getTeams());
+        assertEquals(23, result.getMembers());
+        assertTrue(result.getElapsedMillis() >= 0);
+        assertTrue(result.getRowsPerSecond() > 0);
+
+        assertEquals(5, count("Team") - teamsBefore);
+        assertEquals(23, count("Member") - membersBefore);
+    }
+
+    private long count(String entity) {
+        return em.createQuery("select count(e) from " + entity + " e", Long.class).getSingleResult();
+    }
+}